@@ -17,15 +17,22 @@ package uk.co.magictractor.webcache;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.time.Duration;
+import java.time.ZonedDateTime;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.StampedLock;
+
+import com.google.common.io.ByteStreams;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,84 +47,755 @@ public abstract class AbstractExternalDataResource implements ExternalDataResour
     // Contains charset, content type and download date
     private static final String PROPERTIES_FILE = "properties.json";
 
+    // Properties of the response which a partial body belongs to, when downloads are resumable.
+    private static final String PARTIAL_PROPERTIES_FILE = "partial.json";
+
+    // Back-off after failed fetches when stale-if-error is enabled, doubling for each consecutive failure.
+    private static final Duration INITIAL_BACK_OFF = Duration.ofSeconds(10);
+    private static final Duration MAX_BACK_OFF = Duration.ofMinutes(10);
+
     // Same logger as implementing classes.
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private final List<ExternalDataResourceListener> listeners = new ArrayList<>();
-    private boolean isFetching;
+    // Copy on write because listeners are iterated for every read, but rarely modified.
+    private final List<ExternalDataResourceListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Shared with other instances for the same cache directory. Lazy because getCacheDir()
+    // depends on subclass fields.
+    private volatile CacheEntry cacheEntry;
+
+    private volatile boolean isStreaming;
 
-    private Map<String, FileCacheDataResource> localCopies = new HashMap<>();
-    private CacheProperties properties;
+    private volatile boolean isKeepUncompressedCopy;
+
+    private volatile boolean isResumable;
+
+    private volatile Duration staleWhileRevalidate;
+
+    private volatile Duration staleIfError;
 
     abstract protected boolean isExpired();
 
+    /**
+     * When streaming, a caller which triggers a fetch reads the body as it
+     * arrives rather than waiting for the whole body to be saved first. The
+     * local copy is committed once the stream has been completely read or
+     * closed, and other readers wait until then.
+     */
+    public AbstractExternalDataResource withStreaming(boolean isStreaming) {
+        this.isStreaming = isStreaming;
+        return this;
+    }
+
+    /**
+     * When the body is stored compressed, also save an uncompressed copy for
+     * readers which use the local file directly, such as memory mapped
+     * readers. See {@link #getUncompressedBodyCacheDataResource()}.
+     */
+    public AbstractExternalDataResource withKeepUncompressedCopy(boolean isKeepUncompressedCopy) {
+        this.isKeepUncompressedCopy = isKeepUncompressedCopy;
+        return this;
+    }
+
+    /**
+     * When resumable, if a download fails part way through then the partial
+     * body is kept, and the next fetch continues from where it stopped if the
+     * external resource is unchanged. Intended for large resources.
+     */
+    public AbstractExternalDataResource withResumable(boolean isResumable) {
+        this.isResumable = isResumable;
+        return this;
+    }
+
+    /**
+     * When set, an expired local copy is returned immediately by
+     * {@link #openInputStream()} and revalidated in the background, provided
+     * that it has been stale for no longer than the given duration and the
+     * origin did not send must-revalidate. Staleness is measured from the
+     * HTTP freshness lifetime if known, otherwise from when the local copy was
+     * last fetched or revalidated. Null, the default, makes callers wait for
+     * revalidation.
+     */
+    public AbstractExternalDataResource withStaleWhileRevalidate(Duration maxStaleness) {
+        this.staleWhileRevalidate = maxStaleness;
+        return this;
+    }
+
+    /**
+     * When set, if the origin fails or times out then an expired local copy
+     * is used rather than throwing an exception, provided that it has been
+     * stale for no longer than the given duration and the origin did not
+     * send must-revalidate. Failures are recorded in the properties, and the
+     * origin is not asked again until a back-off deadline has passed. Null,
+     * the default, makes failures throw an exception.
+     */
+    public AbstractExternalDataResource withStaleIfError(Duration maxStaleness) {
+        this.staleIfError = maxStaleness;
+        return this;
+    }
+
+    private CacheEntry getCacheEntry() {
+        CacheEntry entry = cacheEntry;
+        if (entry == null) {
+            // A race here is harmless, all threads get the same canonical entry.
+            entry = CacheEntry.forCacheDir(getCacheDir());
+            cacheEntry = entry;
+        }
+        return entry;
+    }
+
     @Override
     public final InputStream openInputStream() {
-        if (isFetchRequired()) {
-            isFetching = true;
+        if (isFetchingOnThisThread()) {
+            return openBody();
+        }
+
+        // No lock is needed to read, see CacheEntry.
+        long stamp = getCacheEntry().getLock().tryOptimisticRead();
+        if (!isFetchRequired()) {
+            return openBody();
+        }
+
+        if (isStaleServable(staleWhileRevalidate)) {
+            // Opened first, so the revalidation cannot replace the local copy before it is read.
+            InputStream in = openBody();
+            backgroundPrefetch();
+            logger.debug("Serving stale local copy while revalidating {}", name());
+            return in;
+        }
+
+        if (isStreaming) {
+            InputStream in = streamIfRequired(stamp);
+            if (in != null) {
+                return in;
+            }
+        }
+        else {
+            fetchIfRequired(stamp);
+        }
+
+        return openBody();
+    }
+
+    @Override
+    public final ResourceInputStream openInputStream(Duration deadline) {
+        if (deadline == null || deadline.isNegative()) {
+            throw new IllegalArgumentException("deadline must not be negative");
+        }
+        if (isFetchingOnThisThread() || !isFetchRequired()) {
+            return new ResourceInputStream(openBody(), false);
+        }
+
+        if (isStaleServable(staleWhileRevalidate)) {
+            ResourceInputStream in = new ResourceInputStream(openBody(), true);
+            backgroundPrefetch();
+            logger.debug("Serving stale local copy while revalidating {}", name());
+            return in;
+        }
+
+        CompletableFuture<FetchOutcome> fetch = backgroundPrefetch();
+        try {
+            FetchOutcome outcome = fetch.get(deadline.toNanos(), TimeUnit.NANOSECONDS);
+            return new ResourceInputStream(openBody(), outcome == FetchOutcome.STALE);
+        }
+        catch (TimeoutException e) {
+            String reason = "Fetch did not complete within " + deadline;
+            return openStaleBody(reason, new InterruptedIOException(reason));
+        }
+        catch (ExecutionException e) {
+            // Already logged by backgroundPrefetch().
+            return openStaleBody("Fetch failed", e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return openStaleBody("Interrupted", new InterruptedIOException("Interrupted while waiting for fetch"));
+        }
+    }
+
+    // The background fetch continues, and other threads see its result once it has been committed.
+    private ResourceInputStream openStaleBody(String reason, Throwable cause) {
+        if (!hasProperties() || !getBodyCacheDataResource().exists()) {
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw new UncheckedIOException("No local copy of " + name(), (IOException) cause);
+            }
+            throw new IllegalStateException("No local copy of " + name(), cause);
+        }
+
+        logger.info("{}, using stale local copy of {}", reason, name());
+        return new ResourceInputStream(openBody(), true);
+    }
+
+    @Override
+    public final FetchOutcome prefetch() {
+        if (isFetchingOnThisThread()) {
+            return FetchOutcome.CACHED;
+        }
+
+        long stamp = getCacheEntry().getLock().tryOptimisticRead();
+        if (!isFetchRequired()) {
+            return FetchOutcome.CACHED;
+        }
+
+        return fetchIfRequired(stamp);
+    }
+
+    @Override
+    public final FetchOutcome refresh() {
+        if (isFetchingOnThisThread()) {
+            return FetchOutcome.CACHED;
+        }
+
+        StampedLock lock = getCacheEntry().getLock();
+        long stamp = lock.writeLock();
+        try {
+            if (isBackingOff()) {
+                return FetchOutcome.STALE;
+            }
+            return fetch();
+        }
+        finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public ZonedDateTime getExpiry() {
+        for (ExternalDataResourceListener listener : listeners) {
+            ZonedDateTime expiry = listener.getExpiry(this);
+            if (expiry != null) {
+                return expiry;
+            }
+        }
+        return null;
+    }
+
+    private boolean isStaleServable(Duration maxStaleness) {
+        if (maxStaleness == null || !hasProperties() || !getBodyCacheDataResource().exists()) {
+            return false;
+        }
+
+        CacheProperties properties = getProperties();
+        if (properties.isMustRevalidate()) {
+            return false;
+        }
+
+        ZonedDateTime staleSince = properties.getFreshUntil() != null ? properties.getFreshUntil() : properties.getTimestamp();
+        if (staleSince == null) {
+            return false;
+        }
+
+        return !ZonedDateTime.now().isAfter(staleSince.plus(maxStaleness));
+    }
+
+    // Other readers of the same URL share the background fetch.
+    private CompletableFuture<FetchOutcome> backgroundPrefetch() {
+        return getCacheEntry().backgroundFetch(() -> {
+            try {
+                return prefetch();
+            }
+            catch (RuntimeException e) {
+                logger.warn("Background fetch failed for {}", name(), e);
+                throw e;
+            }
+        }, WebCacheExecutors.getDefaultExecutor());
+    }
+
+    /**
+     * Take the write lock, and check again whether a fetch is required if
+     * another thread may have fetched while waiting for the lock.
+     *
+     * @param optimisticStamp a stamp from the optimistic read which found that
+     *        a fetch is required, or zero
+     * @return a write stamp, or zero if a fetch is no longer required
+     */
+    private long lockForFetch(long optimisticStamp) {
+        StampedLock lock = getCacheEntry().getLock();
+        // If nothing has been written since the optimistic read then its check is still valid.
+        long stamp = optimisticStamp == 0L ? 0L : lock.tryConvertToWriteLock(optimisticStamp);
+        if (stamp != 0L) {
+            return stamp;
+        }
+
+        stamp = lock.writeLock();
+        boolean isRequired = false;
+        try {
+            isRequired = isFetchRequired();
+        }
+        finally {
+            if (!isRequired) {
+                // Another thread, perhaps using another instance for the same URL,
+                // has fetched while this thread waited for the lock.
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        return isRequired ? stamp : 0L;
+    }
+
+    private FetchOutcome fetchIfRequired(long optimisticStamp) {
+        long stamp = lockForFetch(optimisticStamp);
+        if (stamp == 0L) {
+            return FetchOutcome.CACHED;
+        }
+        try {
+            if (isBackingOff()) {
+                return FetchOutcome.STALE;
+            }
+            return fetch();
+        }
+        finally {
+            getCacheEntry().getLock().unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Fetch if still required, returning a stream which reads the external
+     * resource while saving the body. Returns null if the existing local copy
+     * should be read instead, because another thread fetched while waiting for
+     * the lock, because of stale-if-error, or see {@link #fetchAndStream(long)}.
+     */
+    private InputStream streamIfRequired(long optimisticStamp) {
+        long stamp = lockForFetch(optimisticStamp);
+        if (stamp == 0L) {
+            return null;
+        }
+
+        boolean isBackingOff;
+        try {
+            // Throws rather than returning true if there is no usable local copy.
+            isBackingOff = isBackingOff();
+        }
+        catch (RuntimeException | Error e) {
+            getCacheEntry().getLock().unlockWrite(stamp);
+            throw e;
+        }
+        if (isBackingOff) {
+            getCacheEntry().getLock().unlockWrite(stamp);
+            return null;
+        }
+
+        // fetchAndStream() releases the lock, possibly once the body has been read.
+        return fetchAndStream(stamp);
+    }
+
+    /**
+     * Called with the write lock held. Returns true if a previous failure is
+     * being backed off from and the stale local copy may be used, and throws
+     * if backing off with no usable local copy.
+     */
+    private boolean isBackingOff() {
+        Duration maxStaleness = staleIfError;
+        if (maxStaleness == null) {
+            return false;
+        }
+
+        CacheProperties properties = getProperties();
+        ZonedDateTime backOffUntil = properties.getBackOffUntil();
+        if (backOffUntil == null || !ZonedDateTime.now().isBefore(backOffUntil)) {
+            return false;
+        }
+
+        if (!isStaleServable(maxStaleness)) {
+            throw new IllegalStateException("Not fetching " + name() + " after " + properties.getFailureCount() + " failures, backing off until "
+                    + backOffUntil);
+        }
+
+        logger.debug("Using stale local copy of {}, backing off until {}", name(), backOffUntil);
+        return true;
+    }
+
+    /**
+     * Called with the write lock held, after the working copy of the
+     * properties for the failed fetch has been discarded. Records the failure
+     * and returns if the stale local copy may be used, otherwise rethrows.
+     */
+    private FetchOutcome fetchFailed(RuntimeException failure) {
+        Duration maxStaleness = staleIfError;
+        if (maxStaleness == null) {
+            throw failure;
+        }
+
+        CacheEntry entry = getCacheEntry();
+        entry.beginFetch(this::readProperties);
+        ZonedDateTime backOffUntil = null;
+        try {
+            CacheProperties properties = getProperties();
+            int failureCount = properties.getFailureCount() + 1;
+            backOffUntil = ZonedDateTime.now().plus(backOff(failureCount));
+            properties.setFailureCount(failureCount);
+            properties.setBackOffUntil(backOffUntil);
+            writeProperties();
+            entry.commitFetch();
+        }
+        catch (RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+        finally {
+            entry.endFetch();
+        }
+
+        if (!isStaleServable(maxStaleness)) {
+            throw failure;
+        }
+
+        logger.warn("Failed to fetch {}, using stale local copy and backing off until {}", name(), backOffUntil, failure);
+        return FetchOutcome.STALE;
+    }
+
+    private static Duration backOff(int failureCount) {
+        // Shift capped to avoid overflow, MAX_BACK_OFF is reached well before.
+        Duration backOff = INITIAL_BACK_OFF.multipliedBy(1L << Math.min(failureCount - 1, 20));
+        return backOff.compareTo(MAX_BACK_OFF) < 0 ? backOff : MAX_BACK_OFF;
+    }
+
+    private void clearFailures() {
+        CacheProperties properties = getProperties();
+        properties.setFailureCount(0);
+        properties.setBackOffUntil(null);
+    }
+
+    // A single snapshot of the properties, so that the body name and encoding match.
+    private InputStream openBody() {
+        CacheProperties properties = getProperties();
+        if (properties.getNotFoundStatus() != 0) {
+            throw new ResourceNotFoundException(name(), properties.getNotFoundStatus());
+        }
+        InputStream in = getCacheDataResource(properties.getBodyName()).openInputStream();
+        try {
+            return ContentEncodings.decode(in, properties.getContentEncoding());
+        }
+        catch (IOException e) {
+            closeQuietly(in);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean isFetchingOnThisThread() {
+        if (getCacheEntry().isFetchingOnThisThread()) {
+            // Happens with postSaveBody hooks such as PrettyPrinterDataResourceListener
+            logger.trace("Fetch not required, fetch is in progress (likely caused by a post-save hook) {}", name());
+            return true;
+        }
+        return false;
+    }
+
+    private void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        }
+        catch (Exception e) {
+            logger.debug("Failed to close stream for {}", name(), e);
+        }
+    }
+
+    private FetchOutcome fetch() {
+        CacheEntry entry = getCacheEntry();
+        entry.beginFetch(this::readProperties);
+        RuntimeException failure;
+        try {
+            clearValidatorsIfBodyMissing();
 
             try (ResourceStreamSupplier rss = fetchResource()) {
+                FetchOutcome outcome;
                 if (rss.isModified()) {
-                    InputStream in = rss.getInputStream();
-
                     preSaveBody();
 
-                    // fetchResource() and preSaveBody() may have explicitly set properties,
-                    // but if not, values can be inferred.
-                    inferProperties();
-
                     // Save a local copy of the content.
                     CacheDataResource bodyResource = getBodyCacheDataResource();
-                    bodyResource.setContent(in);
-
-                    // hook for creating a pretty printed copy of the cached body
-                    // hooks could also modify properties, so do this before writing properties
-                    postSaveBody();
+                    saveBody(bodyResource, rss);
 
-                    // TODO! maybe time elapsed too?
-                    logger.info("Fetched {} bytes from {}", bodyResource.size(), name());
+                    postSaveBody(bodyResource);
+                    outcome = FetchOutcome.MODIFIED;
+                }
+                else if (rss.isNotFound()) {
+                    logger.info("Caching not found result for {} until {}", name(), getProperties().getNotFoundUntil());
+                    outcome = FetchOutcome.NOT_FOUND;
                 }
                 else {
                     logger.info("Confirmed that existing local cache already matches server data for {}", name());
+                    outcome = FetchOutcome.NOT_MODIFIED;
                 }
 
                 // Properties are written even if the content was not modified
                 // because properties includes a timestamp.
-                writeProperties();
+                completeFetch();
+
+                return outcome;
             }
-            catch (IOException e) {
-                throw new UncheckedIOException(e);
+        }
+        catch (IOException e) {
+            failure = new UncheckedIOException(e);
+        }
+        catch (RuntimeException e) {
+            failure = e;
+        }
+        finally {
+            // Discards the working copy of the properties if not committed.
+            entry.endFetch();
+        }
+
+        return fetchFailed(failure);
+    }
+
+    /**
+     * As {@link #fetch()}, but if the external resource has been modified the
+     * body is saved as the caller reads it. The returned stream takes
+     * ownership of the write lock, which is released once the body has been
+     * completely read and saved (or saving fails). Returns null if the local
+     * copy should be opened instead, because it was not modified, was saved
+     * before reading or was not found, or because the fetch failed and the
+     * stale local copy should be used.
+     */
+    private InputStream fetchAndStream(long stamp) {
+        CacheEntry entry = getCacheEntry();
+        boolean isLockTransferred = false;
+
+        entry.beginFetch(this::readProperties);
+        ResourceStreamSupplier rss = null;
+        RuntimeException failure = null;
+        InputStream tee = null;
+        String contentEncoding = null;
+        try {
+            clearValidatorsIfBodyMissing();
+
+            rss = fetchResource();
+            if (!rss.isModified()) {
+                if (rss.isNotFound()) {
+                    logger.info("Caching not found result for {} until {}", name(), getProperties().getNotFoundUntil());
+                }
+                else {
+                    logger.info("Confirmed that existing local cache already matches server data for {}", name());
+                }
+                completeFetch();
+                // The caller opens the local copy, or throws if not found.
+                return null;
+            }
+
+            preSaveBody();
+
+            CacheDataResource bodyResource = getBodyCacheDataResource();
+            if (rss.getResumeOffset() > 0 || rss.getContentWriter() != null) {
+                // The start of the body was saved by an earlier fetch, or the body is being fetched in
+                // parallel ranges, so save the whole body before reading.
+                saveBody(bodyResource, rss);
+                postSaveBody(bodyResource);
+                completeFetch();
+                return null;
+            }
+
+            TeeInputStream.Listener listener = new TeeInputStream.Listener() {
+                @Override
+                public void completed() throws IOException {
+                    commitStreamedBody(bodyResource, stamp);
+                }
+
+                @Override
+                public void aborted(Exception cause) {
+                    abortStreamedBody(bodyResource, stamp, cause);
+                }
+            };
+            contentEncoding = getProperties().getContentEncoding();
+            OutputStream out = isResumable ? bodyResource.openResumableOutputStream(false) : bodyResource.openOutputStream();
+            tee = new TeeInputStream(rss.getInputStream(), out, listener);
+            isLockTransferred = true;
+        }
+        catch (IOException e) {
+            failure = new UncheckedIOException(e);
+        }
+        catch (RuntimeException e) {
+            failure = e;
+        }
+        finally {
+            if (isLockTransferred) {
+                // The working copy of the properties is kept for commitStreamedBody().
+                entry.suspendFetch();
+            }
+            else {
+                // Discards the working copy of the properties if not committed.
+                entry.endFetch();
+                closeQuietly(rss);
+                if (failure == null) {
+                    entry.getLock().unlockWrite(stamp);
+                }
+            }
+        }
+
+        if (failure != null) {
+            // The failure is recorded with the write lock still held.
+            try {
+                fetchFailed(failure);
+                return null;
             }
             finally {
-                isFetching = false;
+                entry.getLock().unlockWrite(stamp);
             }
         }
 
-        return getBodyCacheDataResource().openInputStream();
+        // The encoded body is saved, and the caller reads the decoded body.
+        try {
+            return ContentEncodings.decode(tee, contentEncoding);
+        }
+        catch (IOException e) {
+            // Closing completes or aborts saving the body, and releases the lock.
+            closeQuietly(tee);
+            throw new UncheckedIOException(e);
+        }
     }
 
-    private boolean isFetchRequired() {
-        if (isFetching) {
-            // Happens with postSaveBody hooks such as PrettyPrinterDataResourceListener
-            logger.trace("Fetch not required, fetch is in progress (likely caused by a post-save hook {}", name());
-            return false;
+    // Called on the thread reading the streamed body.
+    private void commitStreamedBody(CacheDataResource bodyResource, long stamp) {
+        CacheEntry entry = getCacheEntry();
+        entry.resumeFetch();
+        try {
+            postSaveBody(bodyResource);
+            completeFetch();
+        }
+        finally {
+            entry.endFetch();
+            entry.getLock().unlockWrite(stamp);
         }
+    }
 
+    // Called on the thread reading the streamed body.
+    private void abortStreamedBody(CacheDataResource bodyResource, long stamp, Exception cause) {
+        logger.warn("Failed to save streamed body for {}, any previous local copy is unchanged", name(), cause);
+        CacheEntry entry = getCacheEntry();
+        entry.resumeFetch();
+        try {
+            if (isResumable) {
+                savePartialProperties(bodyResource);
+            }
+        }
+        catch (RuntimeException e) {
+            logger.warn("Failed to save properties for partial body of {}", name(), e);
+        }
+        finally {
+            // Discards the working copy of the properties, so the previous properties still match the previous local copy (if any).
+            entry.endFetch();
+            entry.getLock().unlockWrite(stamp);
+        }
+    }
+
+    private void saveBody(CacheDataResource bodyResource, ResourceStreamSupplier rss) throws IOException {
+        if (rss.getContentWriter() != null) {
+            bodyResource.setContent(rss.getContentLength(), rss.getContentWriter());
+            return;
+        }
+        if (!isResumable) {
+            bodyResource.setContent(rss.getInputStream());
+            return;
+        }
+
+        OutputStream out = bodyResource.openResumableOutputStream(rss.getResumeOffset() > 0);
+        try {
+            ByteStreams.copy(rss.getInputStream(), out);
+            out.close();
+        }
+        catch (IOException | RuntimeException e) {
+            // Keeps the partial body.
+            bodyResource.abortOutputStream(out);
+            try {
+                savePartialProperties(bodyResource);
+            }
+            catch (RuntimeException e2) {
+                e.addSuppressed(e2);
+            }
+            throw e;
+        }
+    }
+
+    // The working copy of the properties has the validators which are needed to resume.
+    private void savePartialProperties(CacheDataResource bodyResource) {
+        long partialSize = bodyResource.partialSize();
+        if (partialSize > 0) {
+            writeProperties(PARTIAL_PROPERTIES_FILE);
+            logger.info("Kept {} bytes of partial body for {}", partialSize, name());
+        }
+    }
+
+    /**
+     * The properties of the response which partial body content from an
+     * earlier fetch belongs to, or null if there is no partial body which may
+     * be resumed.
+     */
+    CacheProperties getPartialProperties() {
+        if (!isResumable) {
+            return null;
+        }
+        CacheProperties partialProperties = readPartialProperties();
+        if (partialProperties == null || getCacheDataResource(partialProperties.getBodyName()).partialSize() == 0) {
+            return null;
+        }
+        return partialProperties;
+    }
+
+    void discardPartial() {
+        CacheProperties partialProperties = readPartialProperties();
+        if (partialProperties != null) {
+            getCacheDataResource(partialProperties.getBodyName()).discardPartial();
+            getCacheDataResource(PARTIAL_PROPERTIES_FILE).delete();
+        }
+    }
+
+    private CacheProperties readPartialProperties() {
+        CacheDataResource partialPropertiesFile = getCacheDataResource(PARTIAL_PROPERTIES_FILE);
+        if (!partialPropertiesFile.exists()) {
+            return null;
+        }
+        CacheProperties partialProperties = new CacheProperties();
+        try (InputStream in = partialPropertiesFile.openInputStream()) {
+            partialProperties.read(in);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return partialProperties;
+    }
+
+    // Called on the fetching thread once the body, if modified, has been saved.
+    private void completeFetch() {
+        clearFailures();
+        if (isResumable) {
+            discardPartial();
+        }
+        writeProperties();
+        getCacheEntry().commitFetch();
+    }
+
+    private void clearValidatorsIfBodyMissing() {
+        if (hasProperties() && !getBodyCacheDataResource().exists()) {
+            // This is unusual. There's a properties file, but no local copy of the body.
+            // Most likely the local copy has been manually deleted to force a download.
+            // So we must not use If-Modified-Since or If-None-Match in the HTTP request.
+            getProperties().setLastModified(null);
+            getProperties().setEtag(null);
+        }
+    }
+
+    // No side effects, this is called without a lock.
+    private boolean isFetchRequired() {
         if (!hasProperties()) {
             logger.info("Fetch required due to no existing properties {}", name());
             return true;
         }
 
+        CacheProperties properties = getProperties();
+        if (properties.getNotFoundStatus() != 0) {
+            // Negative caching has its own TTL, rather than using listeners.
+            ZonedDateTime notFoundUntil = properties.getNotFoundUntil();
+            return notFoundUntil == null || !ZonedDateTime.now().isBefore(notFoundUntil);
+        }
+
         CacheDataResource bodyCache = getBodyCacheDataResource();
         boolean isCached = bodyCache.exists();
         if (!isCached) {
             logger.info("Fetch required due to missing (deleted?) body file {}", name());
-            // This is unusual. There's a properties file, but no local copy of the body.
-            // Most likely the local copy has been manually deleted to force a download.
-            // So we must not use If-Modified-Since or If-None-Match in the HTTP request.
-            getProperties().setLastModified(null);
-            getProperties().setEtag(null);
-
             return true;
         }
 
@@ -135,13 +813,41 @@ public abstract class AbstractExternalDataResource implements ExternalDataResour
         for (ExternalDataResourceListener listener : listeners) {
             listener.preSaveBody(this);
         }
+
+        // fetchResource() and preSaveBody() may have explicitly set properties,
+        // but if not, values can be inferred.
+        inferProperties();
     }
 
     // The post-save hook is used to modify and save copies of the resource, specifically decrypting (World.json) and pretty printing (.json).
-    private void postSaveBody() {
+    // Hooks could also modify properties, so this is called before writing properties.
+    private void postSaveBody(CacheDataResource bodyResource) {
+        if (isKeepUncompressedCopy) {
+            saveUncompressedCopy(bodyResource);
+        }
+
         for (ExternalDataResourceListener listener : listeners) {
             listener.postSaveBody(this);
         }
+
+        // TODO! maybe time elapsed too?
+        logger.info("Fetched {} bytes from {}", bodyResource.size(), name());
+    }
+
+    private void saveUncompressedCopy(CacheDataResource bodyResource) {
+        String contentEncoding = getProperties().getContentEncoding();
+        if (contentEncoding == null) {
+            // The body itself is uncompressed.
+            return;
+        }
+
+        CacheDataResource uncompressedResource = getCacheDataResource(getProperties().getUncompressedBodyName());
+        try (InputStream in = ContentEncodings.decode(bodyResource.openInputStream(), contentEncoding)) {
+            uncompressedResource.setContent(in);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     @Override
@@ -204,11 +910,18 @@ public abstract class AbstractExternalDataResource implements ExternalDataResour
     }
 
     private void writeProperties() {
-        CacheDataResource propertiesCacheResource = getCacheDataResource(PROPERTIES_FILE);
-        try (OutputStream out = propertiesCacheResource.openOutputStream()) {
+        writeProperties(PROPERTIES_FILE);
+    }
+
+    private void writeProperties(String fileName) {
+        CacheDataResource propertiesCacheResource = getCacheDataResource(fileName);
+        OutputStream out = propertiesCacheResource.openOutputStream();
+        try {
             getProperties().write(out);
+            out.close();
         }
         catch (IOException e) {
+            propertiesCacheResource.abortOutputStream(out);
             throw new UncheckedIOException(e);
         }
     }
@@ -220,39 +933,32 @@ public abstract class AbstractExternalDataResource implements ExternalDataResour
 
     @Override
     public CacheProperties getProperties() {
-        if (properties == null) {
-            CacheDataResource propertiesFile = getCacheDataResource(PROPERTIES_FILE);
-            if (propertiesFile.exists()) {
-                properties = new CacheProperties();
-                try (InputStream in = propertiesFile.openInputStream()) {
-                    properties.read(in);
-                }
-                catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                }
-                logger.debug("Read properties for {}: {} ", name(), properties);
+        return getCacheEntry().getProperties(this::readProperties);
+    }
+
+    private CacheProperties readProperties() {
+        CacheProperties result;
+        CacheDataResource propertiesFile = getCacheDataResource(PROPERTIES_FILE);
+        if (propertiesFile.exists()) {
+            result = new CacheProperties();
+            try (InputStream in = propertiesFile.openInputStream()) {
+                result.read(in);
             }
-            else {
-                properties = CacheProperties.newWithDefaults();
-                logger.debug("Created properties for {}: {} ", name(), properties);
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+            logger.debug("Read properties for {}: {} ", name(), result);
         }
-        return properties;
+        else {
+            result = CacheProperties.newWithDefaults();
+            logger.debug("Created properties for {}: {} ", name(), result);
+        }
+        return result;
     }
 
     @Override
     public FileCacheDataResource getCacheDataResource(String fileName) {
-        FileCacheDataResource localCopy = localCopies.get(fileName);
-        if (localCopy == null) {
-            synchronized (localCopies) {
-                localCopy = localCopies.get(fileName);
-                if (localCopy == null) {
-                    // TODO! charsets...
-                    localCopy = new FileCacheDataResource(getCacheDir(), fileName, StandardCharsets.UTF_8);
-                }
-            }
-        }
-        return localCopy;
+        return getCacheEntry().getCacheDataResource(fileName);
     }
 
     abstract String getCacheDir();
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes to a temporary file in the same directory as the target file, and
+ * moves the temporary file over the target when closed. Readers, including
+ * other processes sharing the cache directory, see either the old content or
+ * the new content, never a partly written file.
+ * <p>
+ * Resumable streams use a fixed name for the temporary file, which is kept if
+ * the stream is aborted so that a later stream may append to it.
+ */
+final class AtomicFileOutputStream extends FilterOutputStream {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AtomicFileOutputStream.class);
+
+    /**
+     * Discard anything written to a stream from
+     * {@link CacheDataResource#openOutputStream()}, leaving any previous
+     * content in place. Other streams are simply closed.
+     */
+    static void abort(OutputStream out) {
+        if (out instanceof AtomicFileOutputStream) {
+            ((AtomicFileOutputStream) out).abort();
+            return;
+        }
+        try {
+            out.close();
+        }
+        catch (IOException e) {
+            LOGGER.debug("Failed to close {}", out, e);
+        }
+    }
+
+    /**
+     * @param partial the temporary file, which is kept if the stream is
+     *        aborted
+     * @param isResume true to append to existing content in the temporary
+     *        file, otherwise any existing content is replaced
+     */
+    static AtomicFileOutputStream resumable(Path target, Path partial, boolean isResume) throws IOException {
+        OutputStream out = isResume
+                ? Files.newOutputStream(partial, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                : Files.newOutputStream(partial);
+        return new AtomicFileOutputStream(target, partial, out, true);
+    }
+
+    private final Path target;
+    private final Path temp;
+    private final boolean isKeepTemp;
+    private boolean isClosed;
+
+    AtomicFileOutputStream(Path target) throws IOException {
+        this(target, Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp"));
+    }
+
+    private AtomicFileOutputStream(Path target, Path temp) throws IOException {
+        this(target, temp, Files.newOutputStream(temp), false);
+    }
+
+    private AtomicFileOutputStream(Path target, Path temp, OutputStream out, boolean isKeepTemp) {
+        super(out);
+        this.target = target;
+        this.temp = temp;
+        this.isKeepTemp = isKeepTemp;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        // FilterOutputStream writes one byte at a time.
+        out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+
+        try {
+            out.close();
+            replace(temp, target);
+        }
+        catch (IOException | RuntimeException e) {
+            deleteTemp();
+            throw e;
+        }
+    }
+
+    /**
+     * Move a temporary file over the target file, atomically if the file
+     * system supports it.
+     */
+    static void replace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            LOGGER.debug("Atomic move not supported, falling back to replacing {}", target);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void abort() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+
+        try {
+            out.close();
+        }
+        catch (IOException e) {
+            LOGGER.debug("Failed to close {}", temp, e);
+        }
+        deleteTemp();
+    }
+
+    private void deleteTemp() {
+        if (isKeepTemp) {
+            LOGGER.debug("Keeping partial content in {}", temp);
+            return;
+        }
+        try {
+            Files.deleteIfExists(temp);
+        }
+        catch (IOException e) {
+            LOGGER.warn("Failed to delete temporary file {}", temp, e);
+        }
+    }
+
+}
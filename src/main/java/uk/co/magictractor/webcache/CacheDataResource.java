@@ -15,12 +15,14 @@
  */
 package uk.co.magictractor.webcache;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 
 import com.google.common.io.ByteStreams;
@@ -37,8 +39,56 @@ public interface CacheDataResource extends DataResource {
 
     int size();
 
+    /**
+     * For files, content is written to a temporary file which replaces the
+     * file when the stream is closed. Use
+     * {@link #abortOutputStream(OutputStream)} rather than closing the stream
+     * to leave the previous content in place.
+     */
     OutputStream openOutputStream();
 
+    /**
+     * Discard anything written to a stream from {@link #openOutputStream()},
+     * leaving any previous content in place.
+     */
+    void abortOutputStream(OutputStream out);
+
+    /**
+     * As {@link #openOutputStream()}, but if the stream is aborted then the
+     * content written so far is kept as partial content, which a later stream
+     * may append to.
+     *
+     * @param isResume true to append to partial content, see
+     *        {@link #partialSize()}
+     */
+    default OutputStream openResumableOutputStream(boolean isResume) {
+        if (isResume) {
+            throw new IllegalStateException("Resuming is not supported for " + this);
+        }
+        return openOutputStream();
+    }
+
+    /** The size of partial content kept from an aborted resumable stream, or zero. */
+    default long partialSize() {
+        return 0;
+    }
+
+    /** Delete any partial content kept from an aborted resumable stream. */
+    default void discardPartial() {
+    }
+
+    void delete();
+
+    /**
+     * Write content of a known size through a channel which has been
+     * preallocated to that size. The writer may write at any position, from
+     * several threads, and the content replaces any previous content once the
+     * writer returns.
+     */
+    default void setContent(long size, ContentWriter writer) {
+        throw new IllegalStateException("Positional writes are not supported for " + this);
+    }
+
     default public Writer openWriter(Charset charset) {
         return new OutputStreamWriter(openOutputStream(), charset);
     }
@@ -48,30 +98,68 @@ public interface CacheDataResource extends DataResource {
     }
 
     default void setContent(char[] chars, Charset charset) {
-        try (OutputStreamWriter out = new OutputStreamWriter(openOutputStream())) {
-            out.write(chars);
+        OutputStream out = openOutputStream();
+        try {
+            OutputStreamWriter writer = new OutputStreamWriter(out, charset);
+            writer.write(chars);
+            writer.close();
         }
         catch (IOException e) {
+            abortOutputStream(out);
             throw new UncheckedIOException(e);
         }
+        catch (RuntimeException | Error e) {
+            abortOutputStream(out);
+            throw e;
+        }
     }
 
     default void setContent(byte[] bytes) {
-        try (OutputStream out = openOutputStream()) {
+        OutputStream out = openOutputStream();
+        try {
             out.write(bytes);
+            out.close();
         }
         catch (IOException e) {
+            abortOutputStream(out);
             throw new UncheckedIOException(e);
         }
+        catch (RuntimeException | Error e) {
+            abortOutputStream(out);
+            throw e;
+        }
     }
 
     default long setContent(InputStream remoteSource) {
-        try (OutputStream out = openOutputStream()) {
-            return ByteStreams.copy(remoteSource, out);
+        OutputStream out = openOutputStream();
+        try {
+            long count = ByteStreams.copy(remoteSource, out);
+            out.close();
+            return count;
         }
         catch (IOException e) {
+            abortOutputStream(out);
             throw new UncheckedIOException(e);
         }
+        catch (RuntimeException | Error e) {
+            abortOutputStream(out);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes content at positions in a channel, see
+     * {@link CacheDataResource#setContent(long, ContentWriter)}. Closed once
+     * the content has been written, or if it is not used.
+     */
+    interface ContentWriter extends Closeable {
+
+        void write(FileChannel channel) throws IOException;
+
+        @Override
+        default void close() throws IOException {
+        }
+
     }
 
 }
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * State shared by all resource instances with the same cache directory:
+ * parsed properties, local copies and the lock which allows only one fetch at
+ * a time. Resource instances hold listeners, which differ between call sites,
+ * so are not themselves shared.
+ */
+final class CacheEntry {
+
+    // Weak values, so entries are discarded once no resource instance refers to them.
+    private static final ConcurrentMap<String, CacheEntry> ENTRIES = CacheBuilder.newBuilder()
+            .weakValues()
+            .<String, CacheEntry> build()
+            .asMap();
+
+    static CacheEntry forCacheDir(String cacheDir) {
+        return ENTRIES.computeIfAbsent(cacheDir, CacheEntry::new);
+    }
+
+    private final String cacheDir;
+
+    // Only fetches take the write lock. Readers take no lock, because fetches modify a working
+    // copy of the properties which is only published once the body has been saved, and local
+    // copies are replaced atomically. Optimistic stamps are used to skip rechecking whether a
+    // fetch is required if no other fetch has started since the check.
+    private final StampedLock lock = new StampedLock();
+
+    // Set while fetching, so that post-save hooks which read the body do not trigger another fetch,
+    // and see the working copy of the properties.
+    private volatile Thread fetchingThread;
+    private volatile CacheProperties workingProperties;
+
+    private final AtomicReference<CompletableFuture<FetchOutcome>> backgroundFetch = new AtomicReference<>();
+
+    private final ConcurrentMap<String, FileCacheDataResource> localCopies = new ConcurrentHashMap<>();
+    private final Object propertiesLock = new Object();
+    private volatile CacheProperties properties;
+
+    private CacheEntry(String cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    StampedLock getLock() {
+        return lock;
+    }
+
+    boolean isFetchingOnThisThread() {
+        return fetchingThread == Thread.currentThread();
+    }
+
+    /**
+     * Called with the write lock held. Until the fetch is committed or ended,
+     * the fetching thread sees a working copy of the properties, and other
+     * threads see the previous properties.
+     */
+    void beginFetch(Supplier<CacheProperties> propertiesReader) {
+        workingProperties = getCommittedProperties(propertiesReader).copy();
+        fetchingThread = Thread.currentThread();
+    }
+
+    /** The fetch continues on another thread, which must call {@link #resumeFetch()}. */
+    void suspendFetch() {
+        fetchingThread = null;
+    }
+
+    void resumeFetch() {
+        fetchingThread = Thread.currentThread();
+    }
+
+    /** Publish the working copy of properties to other threads. */
+    void commitFetch() {
+        properties = workingProperties;
+        endFetch();
+    }
+
+    /** Discards the working copy of properties if the fetch was not committed. */
+    void endFetch() {
+        fetchingThread = null;
+        workingProperties = null;
+    }
+
+    CacheProperties getProperties(Supplier<CacheProperties> propertiesReader) {
+        if (isFetchingOnThisThread()) {
+            CacheProperties working = workingProperties;
+            if (working != null) {
+                return working;
+            }
+        }
+        return getCommittedProperties(propertiesReader);
+    }
+
+    private CacheProperties getCommittedProperties(Supplier<CacheProperties> propertiesReader) {
+        CacheProperties result = properties;
+        if (result == null) {
+            synchronized (propertiesLock) {
+                result = properties;
+                if (result == null) {
+                    result = propertiesReader.get();
+                    properties = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Start a fetch on the executor, unless a background fetch is already in
+     * progress for this entry, in which case that fetch is returned.
+     */
+    CompletableFuture<FetchOutcome> backgroundFetch(Supplier<FetchOutcome> fetch, Executor executor) {
+        while (true) {
+            CompletableFuture<FetchOutcome> existing = backgroundFetch.get();
+            if (existing != null) {
+                return existing;
+            }
+
+            CompletableFuture<FetchOutcome> future = new CompletableFuture<>();
+            if (!backgroundFetch.compareAndSet(null, future)) {
+                continue;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        future.complete(fetch.get());
+                    }
+                    catch (RuntimeException e) {
+                        future.completeExceptionally(e);
+                    }
+                    finally {
+                        backgroundFetch.compareAndSet(future, null);
+                    }
+                });
+            }
+            catch (RuntimeException e) {
+                backgroundFetch.compareAndSet(future, null);
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+    }
+
+    FileCacheDataResource getCacheDataResource(String fileName) {
+        // TODO! charsets...
+        return localCopies.computeIfAbsent(fileName, name -> new FileCacheDataResource(cacheDir, name, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("cacheDir", cacheDir)
+                .toString();
+    }
+
+}
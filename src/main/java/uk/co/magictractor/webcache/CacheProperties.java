@@ -52,6 +52,12 @@ public final class CacheProperties {
 
     private static final String CHARSET_KEY = "Charset";
 
+    /**
+     * The HTTP Content-Encoding of the stored body, such as gzip. Absent if the
+     * body is not encoded.
+     */
+    private static final String CONTENT_ENCODING_KEY = "Content-Encoding";
+
     /**
      * The timestamp of an external resource. Used to determine when external
      * files have changed.
@@ -68,15 +74,92 @@ public final class CacheProperties {
 
     private static final String ETAG_KEY = "ETag";
 
-    private static final List<String> RESERVED_KEYS = List.of(BODY_BASE_KEY, BODY_EXTENSION_KEY, CONTENT_TYPE_KEY, CHARSET_KEY, TIMESTAMP_KEY, LAST_MODIFIED_KEY, ETAG_KEY);
+    /**
+     * The Date header of the latest response from a web server, which is when
+     * the server generated the response.
+     */
+    private static final String DATE_KEY = "Date";
+
+    /**
+     * The time until which the resource may be used without checking with the
+     * server, calculated from HTTP headers such as Cache-Control and Expires.
+     */
+    private static final String FRESH_UNTIL_KEY = "Fresh-Until";
+
+    /**
+     * From Cache-Control, indicates that a stale resource must not be used
+     * without checking with the server.
+     */
+    private static final String MUST_REVALIDATE_KEY = "Must-Revalidate";
+
+    /**
+     * The number of consecutive failed attempts to fetch the resource since
+     * the local copy was last fetched or revalidated.
+     */
+    private static final String FAILURE_COUNT_KEY = "Failure-Count";
+
+    /**
+     * After a failed fetch, the time before which the server should not be
+     * asked again.
+     */
+    private static final String BACK_OFF_UNTIL_KEY = "Back-Off-Until";
+
+    /**
+     * The URL which a web resource has been permanently redirected to (HTTP
+     * 301 or 308), which later requests are sent to directly.
+     */
+    private static final String PERMANENT_REDIRECT_KEY = "Permanent-Redirect";
+
+    /**
+     * The status code (404 or 410) if the external resource was not found,
+     * and this is being cached.
+     */
+    private static final String NOT_FOUND_STATUS_KEY = "Not-Found-Status";
+
+    /** The time until which a "not found" result may be used. */
+    private static final String NOT_FOUND_UNTIL_KEY = "Not-Found-Until";
+
+    /**
+     * The number of revalidations (conditional requests) which found that the
+     * resource had been modified.
+     */
+    private static final String MODIFIED_COUNT_KEY = "Modified-Count";
+
+    /**
+     * The number of revalidations which found that the resource had not been
+     * modified (HTTP 304).
+     */
+    private static final String NOT_MODIFIED_COUNT_KEY = "Not-Modified-Count";
+
+    /**
+     * The number of consecutive revalidations which found that the resource
+     * had not been modified.
+     */
+    private static final String NOT_MODIFIED_STREAK_KEY = "Not-Modified-Streak";
+
+    private static final List<String> RESERVED_KEYS = List.of(BODY_BASE_KEY, BODY_EXTENSION_KEY, CONTENT_TYPE_KEY, CHARSET_KEY, CONTENT_ENCODING_KEY, TIMESTAMP_KEY, LAST_MODIFIED_KEY, ETAG_KEY, DATE_KEY,
+        FRESH_UNTIL_KEY, MUST_REVALIDATE_KEY, FAILURE_COUNT_KEY, BACK_OFF_UNTIL_KEY, PERMANENT_REDIRECT_KEY, NOT_FOUND_STATUS_KEY, NOT_FOUND_UNTIL_KEY,
+        MODIFIED_COUNT_KEY, NOT_MODIFIED_COUNT_KEY, NOT_MODIFIED_STREAK_KEY);
 
     private String bodyBase;
     private String bodyExtension;
     private String contentType;
     private Charset charset;
+    private String contentEncoding;
     private String lastModified;
     private ZonedDateTime timestamp;
     private String etag;
+    private ZonedDateTime date;
+    private ZonedDateTime freshUntil;
+    private boolean isMustRevalidate;
+    private int failureCount;
+    private ZonedDateTime backOffUntil;
+    private String permanentRedirect;
+    private int notFoundStatus;
+    private ZonedDateTime notFoundUntil;
+    private int modifiedCount;
+    private int notModifiedCount;
+    private int notModifiedStreak;
     private Map<String, String> customProperties;
 
     public static final CacheProperties newWithDefaults() {
@@ -89,6 +172,37 @@ public final class CacheProperties {
         return properties;
     }
 
+    /**
+     * A copy which may be modified without affecting this instance. Used for
+     * the working copy of properties during a fetch.
+     */
+    CacheProperties copy() {
+        CacheProperties copy = new CacheProperties();
+        copy.bodyBase = bodyBase;
+        copy.bodyExtension = bodyExtension;
+        copy.contentType = contentType;
+        copy.charset = charset;
+        copy.contentEncoding = contentEncoding;
+        copy.lastModified = lastModified;
+        copy.timestamp = timestamp;
+        copy.etag = etag;
+        copy.date = date;
+        copy.freshUntil = freshUntil;
+        copy.isMustRevalidate = isMustRevalidate;
+        copy.failureCount = failureCount;
+        copy.backOffUntil = backOffUntil;
+        copy.permanentRedirect = permanentRedirect;
+        copy.notFoundStatus = notFoundStatus;
+        copy.notFoundUntil = notFoundUntil;
+        copy.modifiedCount = modifiedCount;
+        copy.notModifiedCount = notModifiedCount;
+        copy.notModifiedStreak = notModifiedStreak;
+        if (customProperties != null) {
+            copy.customProperties = new LinkedHashMap<>(customProperties);
+        }
+        return copy;
+    }
+
     public String getBodyBase() {
         return bodyBase;
     }
@@ -109,10 +223,23 @@ public final class CacheProperties {
         this.bodyExtension = bodyExtension;
     }
 
+    /**
+     * The name of the stored body, which has an additional extension such as
+     * ".gz" if the body is stored compressed.
+     */
     public String getBodyName() {
+        return getBodyName(null) + ContentEncodings.extension(contentEncoding);
+    }
+
+    /** The name of the body if stored uncompressed. */
+    public String getUncompressedBodyName() {
         return getBodyName(null);
     }
 
+    /**
+     * The name for a copy of the body, such as a pretty printed copy. Copies
+     * are not compressed.
+     */
     public String getBodyName(String suffix) {
         StringBuilder nameBuilder = new StringBuilder();
         nameBuilder.append(getBodyBase());
@@ -149,6 +276,14 @@ public final class CacheProperties {
         return charset;
     }
 
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = ContentEncodings.normalise(contentEncoding);
+    }
+
     public ZonedDateTime getTimestamp() {
         return timestamp;
     }
@@ -173,6 +308,107 @@ public final class CacheProperties {
         this.etag = etag;
     }
 
+    public ZonedDateTime getDate() {
+        return date;
+    }
+
+    public void setDate(ZonedDateTime date) {
+        this.date = date;
+    }
+
+    public ZonedDateTime getFreshUntil() {
+        return freshUntil;
+    }
+
+    public void setFreshUntil(ZonedDateTime freshUntil) {
+        this.freshUntil = freshUntil;
+    }
+
+    public boolean isMustRevalidate() {
+        return isMustRevalidate;
+    }
+
+    public void setMustRevalidate(boolean isMustRevalidate) {
+        this.isMustRevalidate = isMustRevalidate;
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    public void setFailureCount(int failureCount) {
+        this.failureCount = failureCount;
+    }
+
+    public ZonedDateTime getBackOffUntil() {
+        return backOffUntil;
+    }
+
+    public void setBackOffUntil(ZonedDateTime backOffUntil) {
+        this.backOffUntil = backOffUntil;
+    }
+
+    public String getPermanentRedirect() {
+        return permanentRedirect;
+    }
+
+    public void setPermanentRedirect(String permanentRedirect) {
+        this.permanentRedirect = permanentRedirect;
+    }
+
+    /** Zero unless a "not found" result is cached. */
+    public int getNotFoundStatus() {
+        return notFoundStatus;
+    }
+
+    public void setNotFoundStatus(int notFoundStatus) {
+        this.notFoundStatus = notFoundStatus;
+    }
+
+    public ZonedDateTime getNotFoundUntil() {
+        return notFoundUntil;
+    }
+
+    public void setNotFoundUntil(ZonedDateTime notFoundUntil) {
+        this.notFoundUntil = notFoundUntil;
+    }
+
+    public int getModifiedCount() {
+        return modifiedCount;
+    }
+
+    public void setModifiedCount(int modifiedCount) {
+        this.modifiedCount = modifiedCount;
+    }
+
+    public int getNotModifiedCount() {
+        return notModifiedCount;
+    }
+
+    public void setNotModifiedCount(int notModifiedCount) {
+        this.notModifiedCount = notModifiedCount;
+    }
+
+    public int getNotModifiedStreak() {
+        return notModifiedStreak;
+    }
+
+    public void setNotModifiedStreak(int notModifiedStreak) {
+        this.notModifiedStreak = notModifiedStreak;
+    }
+
+    /** Records the result of a revalidation, used to adapt the revalidation interval. */
+    public void recordRevalidation(boolean isModified) {
+        if (isModified) {
+            modifiedCount++;
+            notModifiedStreak = 0;
+        }
+        else {
+            notModifiedCount++;
+            notModifiedStreak++;
+        }
+    }
+
     public String getCustomProperty(String key) {
         return customProperties == null ? null : customProperties.get(key);
     }
@@ -260,6 +496,9 @@ public final class CacheProperties {
             case CHARSET_KEY:
                 setCharsetName(value);
                 break;
+            case CONTENT_ENCODING_KEY:
+                setContentEncoding(value);
+                break;
             case TIMESTAMP_KEY:
                 setTimestamp(ZONED_DATE_TIME_FORMATTER.parse(value, ZonedDateTime::from));
                 break;
@@ -269,6 +508,39 @@ public final class CacheProperties {
             case ETAG_KEY:
                 setEtag(value);
                 break;
+            case DATE_KEY:
+                setDate(ZONED_DATE_TIME_FORMATTER.parse(value, ZonedDateTime::from));
+                break;
+            case FRESH_UNTIL_KEY:
+                setFreshUntil(ZONED_DATE_TIME_FORMATTER.parse(value, ZonedDateTime::from));
+                break;
+            case MUST_REVALIDATE_KEY:
+                setMustRevalidate(Boolean.parseBoolean(value));
+                break;
+            case FAILURE_COUNT_KEY:
+                setFailureCount(Integer.parseInt(value));
+                break;
+            case BACK_OFF_UNTIL_KEY:
+                setBackOffUntil(ZONED_DATE_TIME_FORMATTER.parse(value, ZonedDateTime::from));
+                break;
+            case PERMANENT_REDIRECT_KEY:
+                setPermanentRedirect(value);
+                break;
+            case NOT_FOUND_STATUS_KEY:
+                setNotFoundStatus(Integer.parseInt(value));
+                break;
+            case NOT_FOUND_UNTIL_KEY:
+                setNotFoundUntil(ZONED_DATE_TIME_FORMATTER.parse(value, ZonedDateTime::from));
+                break;
+            case MODIFIED_COUNT_KEY:
+                setModifiedCount(Integer.parseInt(value));
+                break;
+            case NOT_MODIFIED_COUNT_KEY:
+                setNotModifiedCount(Integer.parseInt(value));
+                break;
+            case NOT_MODIFIED_STREAK_KEY:
+                setNotModifiedStreak(Integer.parseInt(value));
+                break;
             default:
                 setCustomProperty(key, value);
         }
@@ -286,9 +558,21 @@ public final class CacheProperties {
         isFirst = write(writer, BODY_EXTENSION_KEY, getBodyExtension(), isFirst);
         isFirst = write(writer, CONTENT_TYPE_KEY, getContentType(), isFirst);
         isFirst = write(writer, CHARSET_KEY, getCharsetName(), isFirst);
+        isFirst = write(writer, CONTENT_ENCODING_KEY, getContentEncoding(), isFirst);
         isFirst = write(writer, LAST_MODIFIED_KEY, getLastModified(), isFirst);
         isFirst = write(writer, ETAG_KEY, getEtag(), isFirst);
         isFirst = write(writer, TIMESTAMP_KEY, getTimestamp(), isFirst);
+        isFirst = write(writer, DATE_KEY, getDate(), isFirst);
+        isFirst = write(writer, FRESH_UNTIL_KEY, getFreshUntil(), isFirst);
+        isFirst = write(writer, MUST_REVALIDATE_KEY, isMustRevalidate() ? "true" : null, isFirst);
+        isFirst = write(writer, FAILURE_COUNT_KEY, getFailureCount() == 0 ? null : Integer.toString(getFailureCount()), isFirst);
+        isFirst = write(writer, BACK_OFF_UNTIL_KEY, getBackOffUntil(), isFirst);
+        isFirst = write(writer, PERMANENT_REDIRECT_KEY, getPermanentRedirect(), isFirst);
+        isFirst = write(writer, NOT_FOUND_STATUS_KEY, getNotFoundStatus() == 0 ? null : Integer.toString(getNotFoundStatus()), isFirst);
+        isFirst = write(writer, NOT_FOUND_UNTIL_KEY, getNotFoundUntil(), isFirst);
+        isFirst = write(writer, MODIFIED_COUNT_KEY, getModifiedCount() == 0 ? null : Integer.toString(getModifiedCount()), isFirst);
+        isFirst = write(writer, NOT_MODIFIED_COUNT_KEY, getNotModifiedCount() == 0 ? null : Integer.toString(getNotModifiedCount()), isFirst);
+        isFirst = write(writer, NOT_MODIFIED_STREAK_KEY, getNotModifiedStreak() == 0 ? null : Integer.toString(getNotModifiedStreak()), isFirst);
         if (customProperties != null) {
             for (Map.Entry<String, String> customEntry : customProperties.entrySet()) {
                 isFirst = write(writer, customEntry.getKey(), customEntry.getValue(), isFirst);
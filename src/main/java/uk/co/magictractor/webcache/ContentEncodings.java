@@ -0,0 +1,120 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * HTTP content encodings which may be requested, stored compressed and
+ * decoded as bodies are read.
+ */
+final class ContentEncodings {
+
+    /** Value for the Accept-Encoding request header. */
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    /**
+     * @param headerValue value of the Content-Encoding response header, may be
+     *        null
+     * @return gzip, deflate, or null if the body is not encoded
+     * @throws IllegalStateException if the encoding is not supported
+     */
+    static String normalise(String headerValue) {
+        if (headerValue == null) {
+            return null;
+        }
+        String encoding = headerValue.trim().toLowerCase(Locale.ROOT);
+        switch (encoding) {
+            case "":
+            case "identity":
+                return null;
+            case GZIP:
+            case "x-gzip":
+                return GZIP;
+            case DEFLATE:
+                return DEFLATE;
+            default:
+                // Includes multiple encodings, like "deflate, gzip", which are never used in practice.
+                throw new IllegalStateException("Unsupported Content-Encoding: " + headerValue);
+        }
+    }
+
+    /** Appended to the name of the stored body, so that tools recognise compressed files. */
+    static String extension(String encoding) {
+        if (encoding == null) {
+            return "";
+        }
+        switch (encoding) {
+            case GZIP:
+                return ".gz";
+            case DEFLATE:
+                return ".zz";
+            default:
+                throw new IllegalArgumentException("Unknown encoding: " + encoding);
+        }
+    }
+
+    static InputStream decode(InputStream in, String encoding) throws IOException {
+        if (encoding == null) {
+            return in;
+        }
+        switch (encoding) {
+            case GZIP:
+                return new GZIPInputStream(in);
+            case DEFLATE:
+                return inflate(in);
+            default:
+                throw new IllegalArgumentException("Unknown encoding: " + encoding);
+        }
+    }
+
+    // "deflate" should be zlib wrapped, but some servers send raw deflate data, so check for a zlib header.
+    private static InputStream inflate(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        buffered.mark(2);
+        int cmf = buffered.read();
+        int flg = buffered.read();
+        buffered.reset();
+
+        boolean isZlib = cmf != -1 && flg != -1 && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+        Inflater inflater = new Inflater(!isZlib);
+        return new InflaterInputStream(buffered, inflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                }
+                finally {
+                    // Not done by InflaterInputStream when the Inflater is supplied.
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    private ContentEncodings() {
+    }
+
+}
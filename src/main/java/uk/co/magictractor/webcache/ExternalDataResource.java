@@ -15,7 +15,12 @@
  */
 package uk.co.magictractor.webcache;
 
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import uk.co.magictractor.webcache.listeners.ExternalDataResourceListener;
 
@@ -34,10 +39,77 @@ public interface ExternalDataResource extends DataResource {
 
     CacheProperties getProperties();
 
+    /**
+     * As {@link #openInputStream()}, but waits no longer than the deadline for
+     * a fetch. If the fetch does not complete in time, or fails, then the
+     * existing local copy is returned flagged as stale, and the fetch
+     * continues in the background. This applies even if the origin sent
+     * must-revalidate, so callers should check
+     * {@link ResourceInputStream#isStale()}. If there is no local copy then an
+     * exception is thrown. Caller is responsible for closing the stream.
+     * <p>
+     * The default implementation ignores the deadline.
+     */
+    default ResourceInputStream openInputStream(Duration deadline) {
+        return new ResourceInputStream(openInputStream(), false);
+    }
+
+    /**
+     * Fetch the external resource if the local copy is missing or has expired,
+     * without opening the body.
+     */
+    default FetchOutcome prefetch() {
+        throw new IllegalStateException("Prefetching is not supported for " + name());
+    }
+
+    /**
+     * Fetch the external resource even if the local copy has not expired. For
+     * web resources with a local copy this is a conditional request.
+     */
+    default FetchOutcome refresh() {
+        throw new IllegalStateException("Refreshing is not supported for " + name());
+    }
+
+    /**
+     * When the local copy will expire, or null if not known. Determined by
+     * listeners, see {@link ExternalDataResourceListener#getExpiry}.
+     */
+    default ZonedDateTime getExpiry() {
+        return null;
+    }
+
+    /**
+     * As {@link #openInputStream()}, but any fetch happens using the default
+     * executor from {@link WebCacheExecutors} rather than blocking the caller.
+     * Caller is responsible for closing the stream.
+     */
+    default CompletableFuture<InputStream> openInputStreamAsync() {
+        return openInputStreamAsync(WebCacheExecutors.getDefaultExecutor());
+    }
+
+    /** Caller is responsible for closing the stream. */
+    default CompletableFuture<InputStream> openInputStreamAsync(Executor executor) {
+        return CompletableFuture.supplyAsync(this::openInputStream, executor);
+    }
+
+    /**
+     * The local copy of the body, as received. This may be compressed, see
+     * {@link CacheProperties#getContentEncoding()}, whereas
+     * {@link #openInputStream()} always returns the uncompressed body.
+     */
     default CacheDataResource getBodyCacheDataResource() {
         return getCacheDataResource(getProperties().getBodyName());
     }
 
+    /**
+     * The local copy of the body without compression. If the body is stored
+     * compressed then this only exists if the resource keeps an uncompressed
+     * copy.
+     */
+    default CacheDataResource getUncompressedBodyCacheDataResource() {
+        return getCacheDataResource(getProperties().getUncompressedBodyName());
+    }
+
     CacheDataResource getCacheDataResource(String cacheName);
 
     ExternalDataResource addListener(ExternalDataResourceListener listener);
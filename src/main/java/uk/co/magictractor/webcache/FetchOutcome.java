@@ -0,0 +1,45 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache;
+
+/**
+ * The result of checking whether an external resource needs to be fetched,
+ * and fetching it if so.
+ */
+public enum FetchOutcome {
+
+    /** The local copy had not expired, so the external resource was not checked. */
+    CACHED,
+
+    /** The external resource was checked and had not changed (304 for HTTP). */
+    NOT_MODIFIED,
+
+    /** The external resource was fetched and saved (200 for HTTP). */
+    MODIFIED,
+
+    /**
+     * The external resource could not be fetched, or a previous failure is
+     * being backed off from, so the expired local copy was kept (stale-if-error).
+     */
+    STALE,
+
+    /**
+     * The external resource does not exist (404 or 410 for HTTP), and this is
+     * cached until a TTL has passed.
+     */
+    NOT_FOUND;
+
+}
@@ -16,15 +16,17 @@
 package uk.co.magictractor.webcache;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import com.google.common.base.MoreObjects;
 
@@ -68,59 +70,119 @@ public class FileCacheDataResource implements CacheDataResource {
         return charset;
     }
 
-    private void touch() {
+    @Override
+    public boolean exists() {
+        return file.exists();
+    }
+
+    @Override
+    public int size() {
+        return (int) file.length();
+    }
+
+    @Override
+    public InputStream openInputStream() {
         try {
-            touch0();
+            // Unlike FileInputStream, on Windows this allows the file to be replaced while it is being read.
+            return Files.newInputStream(file.toPath());
         }
         catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
-    private void touch0() throws IOException {
-        // Files.exists
-        if (file.exists()) {
-            return;
+    /**
+     * Content is written to a temporary file which replaces the file when the
+     * stream is closed, so readers never see partly written content.
+     */
+    @Override
+    public OutputStream openOutputStream() {
+        if (!file.exists()) {
+            LOGGER.debug("Creating new file {}", file);
+        }
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            return new AtomicFileOutputStream(file.toPath());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-
-        file.getParentFile().mkdirs();
-
-        LOGGER.debug("Creating new file {}", file);
-
-        file.createNewFile();
     }
 
     @Override
-    public boolean exists() {
-        return file.exists();
+    public void abortOutputStream(OutputStream out) {
+        AtomicFileOutputStream.abort(out);
     }
 
     @Override
-    public int size() {
-        return (int) file.length();
+    public OutputStream openResumableOutputStream(boolean isResume) {
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            return AtomicFileOutputStream.resumable(file.toPath(), partialFile().toPath(), isResume);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
+    /**
+     * As for {@link #openOutputStream()}, content is written to a temporary
+     * file which replaces the file once the writer returns.
+     */
     @Override
-    public InputStream openInputStream() {
+    public void setContent(long size, ContentWriter writer) {
         try {
-            return new FileInputStream(file);
+            Files.createDirectories(file.getParentFile().toPath());
+            Path temp = Files.createTempFile(file.getParentFile().toPath(), "." + file.getName(), ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    if (size > 0) {
+                        // Extend the file to its final size, so that content may be written in any order.
+                        channel.write(ByteBuffer.allocate(1), size - 1);
+                    }
+                    writer.write(channel);
+                }
+                AtomicFileOutputStream.replace(temp, file.toPath());
+            }
+            catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
         }
-        catch (FileNotFoundException e) {
+        catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
     @Override
-    public OutputStream openOutputStream() {
-        touch();
+    public long partialSize() {
+        return partialFile().length();
+    }
+
+    @Override
+    public void discardPartial() {
+        delete(partialFile());
+    }
+
+    @Override
+    public void delete() {
+        delete(file);
+    }
+
+    private void delete(File fileToDelete) {
         try {
-            return new FileOutputStream(file);
+            Files.deleteIfExists(fileToDelete.toPath());
         }
-        catch (FileNotFoundException e) {
+        catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
+    // Hidden, like temporary files for other writes.
+    private File partialFile() {
+        return new File(file.getParentFile(), "." + file.getName() + ".partial");
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
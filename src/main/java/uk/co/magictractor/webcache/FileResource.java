@@ -60,6 +60,12 @@ public class FileResource extends AbstractExternalDataResource {
         return hasExternalFileChanged();
     }
 
+    @Override
+    public ZonedDateTime getExpiry() {
+        // Expiry is determined by changes to the external file, which can't be predicted.
+        return null;
+    }
+
     private boolean hasExternalFileChanged() {
         // Millis are not preserved in the properties, so convert to seconds for comparison.
         long previousTimestamp = getProperties().getTimestamp().toInstant().toEpochMilli() / 1000;
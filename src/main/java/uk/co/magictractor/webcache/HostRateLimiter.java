@@ -0,0 +1,192 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache;
+
+import java.io.InterruptedIOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.MoreObjects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.magictractor.webcache.transport.HttpTransport;
+
+/**
+ * Limits the rate of requests to each host with a token bucket, so that bursts
+ * of fetches, for example from many threads calling
+ * {@link ExternalDataResource#openInputStream()}, do not get clients banned.
+ * Hosts without a rate of their own use the default rate, which is unlimited
+ * unless set.
+ * <p>
+ * Callers which must wait reserve a token before sleeping, so waiters are
+ * served in the order in which they arrived.
+ */
+public final class HostRateLimiter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HostRateLimiter.class);
+
+    private final Map<String, Rate> hostRates = new ConcurrentHashMap<>();
+    // Null for unlimited.
+    private volatile Rate defaultRate;
+    private final Map<String, TokenBucket> tokenBuckets = new ConcurrentHashMap<>();
+
+    /**
+     * @param requestsPerSecond the sustained rate of requests
+     * @param burst the number of requests which may be sent without waiting
+     *        after the host has been idle
+     */
+    public HostRateLimiter setRate(String host, double requestsPerSecond, int burst) {
+        String hostKey = hostKey(host);
+        hostRates.put(hostKey, new Rate(requestsPerSecond, burst));
+        tokenBuckets.remove(hostKey);
+        return this;
+    }
+
+    public HostRateLimiter removeRate(String host) {
+        String hostKey = hostKey(host);
+        hostRates.remove(hostKey);
+        tokenBuckets.remove(hostKey);
+        return this;
+    }
+
+    /** The rate for hosts without a rate of their own. */
+    public HostRateLimiter setDefaultRate(double requestsPerSecond, int burst) {
+        defaultRate = new Rate(requestsPerSecond, burst);
+        tokenBuckets.clear();
+        return this;
+    }
+
+    public HostRateLimiter removeDefaultRate() {
+        defaultRate = null;
+        tokenBuckets.clear();
+        return this;
+    }
+
+    /**
+     * Wait, if necessary, until a request may be sent to the host.
+     */
+    public void acquire(String host) throws InterruptedIOException {
+        String hostKey = hostKey(host);
+        TokenBucket tokenBucket = tokenBuckets.get(hostKey);
+        if (tokenBucket == null) {
+            Rate rate = hostRates.getOrDefault(hostKey, defaultRate);
+            if (rate == null) {
+                return;
+            }
+            tokenBucket = tokenBuckets.computeIfAbsent(hostKey, k -> new TokenBucket(rate));
+        }
+
+        long waitNanos = tokenBucket.reserve();
+        if (waitNanos <= 0) {
+            return;
+        }
+
+        LOGGER.debug("Waiting {}ms before sending request to {}", TimeUnit.NANOSECONDS.toMillis(waitNanos), host);
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send request to " + host);
+        }
+    }
+
+    /**
+     * A transport which waits for the rate limit for the host of each request.
+     * This should wrap the transport which sends requests over the network,
+     * inside any retrying, circuit breaking or hedging transports, so that
+     * every attempt is limited. {@link WebCache} applies its limiter to each
+     * request itself, so transports given to it should not also be limited.
+     */
+    public HttpTransport limit(HttpTransport transport) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport must not be null");
+        }
+        return request -> {
+            acquire(request.getUri().getHost());
+            return transport.send(request);
+        };
+    }
+
+    private static String hostKey(String host) {
+        if (host == null) {
+            throw new IllegalArgumentException("host must not be null");
+        }
+        return host.toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("hostRates", hostRates)
+                .add("defaultRate", defaultRate)
+                .toString();
+    }
+
+    private static final class Rate {
+        private final double requestsPerSecond;
+        private final int burst;
+
+        private Rate(double requestsPerSecond, int burst) {
+            if (!(requestsPerSecond > 0)) {
+                throw new IllegalArgumentException("requestsPerSecond must be positive");
+            }
+            if (burst < 1) {
+                throw new IllegalArgumentException("burst must be at least 1");
+            }
+            this.requestsPerSecond = requestsPerSecond;
+            this.burst = burst;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("requestsPerSecond", requestsPerSecond)
+                    .add("burst", burst)
+                    .toString();
+        }
+    }
+
+    private static final class TokenBucket {
+        private final double tokensPerNano;
+        private final int burst;
+        // Negative when callers are waiting, each has reserved a token which is yet to be added.
+        private double tokens;
+        private long lastRefillNanos;
+
+        private TokenBucket(Rate rate) {
+            tokensPerNano = rate.requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+            burst = rate.burst;
+            tokens = burst;
+            lastRefillNanos = System.nanoTime();
+        }
+
+        /** Takes a token, returning how long to wait before it is available. */
+        synchronized long reserve() {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefillNanos) * tokensPerNano);
+            lastRefillNanos = now;
+
+            tokens -= 1;
+            return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+        }
+    }
+
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache;
+
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.common.base.MoreObjects;
+
+import uk.co.magictractor.webcache.transport.TransportResponse;
+
+/**
+ * <p>
+ * Freshness of a response, calculated from {@code Cache-Control},
+ * {@code Expires}, {@code Age} and {@code Date} headers as described in RFC
+ * 9111 section 4.2.
+ * </p>
+ * <p>
+ * A WebCache is typically shared by many callers, so it behaves as a shared
+ * cache and {@code s-maxage} takes precedence over {@code max-age}.
+ * </p>
+ */
+final class HttpFreshness {
+
+    private static final DateTimeFormatter HTTP_DATE_FORMATTER = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+    static HttpFreshness of(TransportResponse response, ZonedDateTime responseTime) {
+        // Cache-Control may be repeated, with directives in each header.
+        List<String> cacheControl = response.getHeaderValues("Cache-Control");
+        return parse(
+            cacheControl.isEmpty() ? null : String.join(",", cacheControl),
+            response.getFirstHeader("Expires"),
+            response.getFirstHeader("Age"),
+            response.getFirstHeader("Date"),
+            responseTime);
+    }
+
+    static HttpFreshness parse(String cacheControl, String expires, String age, String date, ZonedDateTime responseTime) {
+        HttpFreshness freshness = new HttpFreshness();
+        if (cacheControl != null) {
+            freshness.parseCacheControl(cacheControl);
+        }
+        freshness.date = freshness.parseDate(date);
+        freshness.freshUntil = freshness.calculateFreshUntil(expires, age, responseTime);
+
+        return freshness;
+    }
+
+    private Long maxAge;
+    private Long sharedMaxAge;
+    private boolean isNoCache;
+    private boolean isMustRevalidate;
+    private ZonedDateTime date;
+    private ZonedDateTime freshUntil;
+
+    private HttpFreshness() {
+    }
+
+    private void parseCacheControl(String cacheControl) {
+        for (String directive : cacheControl.split(",")) {
+            String name = directive;
+            String value = null;
+            int equalsIndex = directive.indexOf('=');
+            if (equalsIndex != -1) {
+                name = directive.substring(0, equalsIndex);
+                value = directive.substring(equalsIndex + 1).trim().replace("\"", "");
+            }
+            name = name.trim().toLowerCase(Locale.ROOT);
+
+            switch (name) {
+                case "max-age":
+                    maxAge = parseSeconds(value);
+                    break;
+                case "s-maxage":
+                    sharedMaxAge = parseSeconds(value);
+                    break;
+                case "no-cache":
+                case "no-store":
+                    isNoCache = true;
+                    break;
+                case "must-revalidate":
+                case "proxy-revalidate":
+                    isMustRevalidate = true;
+                    break;
+                default:
+                    // Ignore other directives, such as "public" and "immutable".
+            }
+        }
+    }
+
+    private Long parseSeconds(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value));
+        }
+        catch (NumberFormatException e) {
+            // Invalid values are treated as stale (RFC 9111 section 4.2.1).
+            return 0L;
+        }
+    }
+
+    private ZonedDateTime calculateFreshUntil(String expires, String age, ZonedDateTime responseTime) {
+        if (isNoCache) {
+            // Stored, but must be validated before each use.
+            return responseTime;
+        }
+
+        Long lifetimeSeconds;
+        if (sharedMaxAge != null) {
+            lifetimeSeconds = sharedMaxAge;
+        }
+        else if (maxAge != null) {
+            lifetimeSeconds = maxAge;
+        }
+        else if (expires != null) {
+            ZonedDateTime expiresValue = parseDate(expires);
+            if (expiresValue == null) {
+                // Invalid values, like "0", mean already expired.
+                return responseTime;
+            }
+            ZonedDateTime base = date == null ? responseTime : date;
+            lifetimeSeconds = Math.max(0, Duration.between(base, expiresValue).getSeconds());
+        }
+        else {
+            // No explicit freshness, leave it to other expiry listeners.
+            return null;
+        }
+
+        // Age when received, RFC 9111 section 4.2.3, ignoring request time.
+        long apparentAge = date == null ? 0 : Math.max(0, Duration.between(date, responseTime).getSeconds());
+        Long ageValue = parseSeconds(age);
+        long initialAge = ageValue == null ? apparentAge : Math.max(apparentAge, ageValue);
+
+        return responseTime.plusSeconds(Math.max(0, lifetimeSeconds - initialAge));
+    }
+
+    private ZonedDateTime parseDate(String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return HTTP_DATE_FORMATTER.parse(date.trim(), ZonedDateTime::from);
+        }
+        catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /** The Date header, when the response was generated, or null if missing or invalid. */
+    ZonedDateTime getDate() {
+        return date;
+    }
+
+    /**
+     * The time until which the response may be used without revalidation, or
+     * null if the response has no explicit freshness information.
+     */
+    ZonedDateTime getFreshUntil() {
+        return freshUntil;
+    }
+
+    /** The response must not be used after it becomes stale without successful revalidation. */
+    boolean isMustRevalidate() {
+        return isMustRevalidate;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("date", date)
+                .add("freshUntil", freshUntil)
+                .add("isMustRevalidate", isMustRevalidate)
+                .toString();
+    }
+
+}
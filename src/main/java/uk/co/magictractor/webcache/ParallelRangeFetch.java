@@ -0,0 +1,226 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.MoreObjects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.magictractor.webcache.transport.HttpTransport;
+import uk.co.magictractor.webcache.transport.TransportRequest;
+import uk.co.magictractor.webcache.transport.TransportResponse;
+
+/**
+ * Fetches a body as several ranges in parallel, writing each range at its
+ * offset in the local copy. The first range is read from the response to the
+ * initial request, and the remaining ranges are fetched with If-Range so that
+ * every range comes from the same version of the resource.
+ * <p>
+ * Ranges are claimed by whichever thread is free, including the thread
+ * writing the body, which only waits for ranges which other threads have
+ * claimed. So a busy executor slows the fetch down but cannot deadlock it.
+ */
+final class ParallelRangeFetch implements CacheDataResource.ContentWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelRangeFetch.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final HttpTransport transport;
+    private final URI uri;
+    private final String ifRange;
+    private final long contentLength;
+    private final int rangeCount;
+    private final long rangeSize;
+    private final InputStream initialBody;
+    private final Executor executor;
+
+    private final AtomicInteger nextRange = new AtomicInteger(1);
+    private final CountDownLatch rangesEnded;
+    private final Queue<Exception> failures = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param ifRange a strong validator from the initial response
+     * @param initialBody the body of the initial response, which is closed
+     *        once the first range has been read
+     */
+    ParallelRangeFetch(HttpTransport transport, URI uri, String ifRange, long contentLength, int rangeCount, InputStream initialBody,
+            Executor executor) {
+        if (rangeCount < 1 || contentLength < rangeCount) {
+            throw new IllegalArgumentException("Cannot split " + contentLength + " bytes into " + rangeCount + " ranges");
+        }
+        this.transport = transport;
+        this.uri = uri;
+        this.ifRange = ifRange;
+        this.contentLength = contentLength;
+        this.rangeCount = rangeCount;
+        this.rangeSize = (contentLength + rangeCount - 1) / rangeCount;
+        this.initialBody = initialBody;
+        this.executor = executor;
+        rangesEnded = new CountDownLatch(rangeCount);
+    }
+
+    long getContentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public void write(FileChannel channel) throws IOException {
+        LOGGER.info("Fetching {} bytes in {} ranges from {}", contentLength, rangeCount, uri);
+
+        for (int i = 1; i < rangeCount; i++) {
+            try {
+                executor.execute(() -> fetchRanges(channel));
+            }
+            catch (RejectedExecutionException e) {
+                LOGGER.debug("Executor rejected range fetch, fewer ranges will be fetched concurrently for {}", uri, e);
+                break;
+            }
+        }
+
+        try {
+            writeRange(channel, 0, initialBody);
+        }
+        catch (IOException | RuntimeException e) {
+            failures.add(e);
+        }
+        finally {
+            closeInitialBody();
+            rangesEnded.countDown();
+        }
+        fetchRanges(channel);
+
+        try {
+            rangesEnded.await();
+        }
+        catch (InterruptedException e) {
+            // Other threads stop at their next read.
+            failures.add(e);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching ranges of " + uri);
+        }
+
+        Exception failure = failures.poll();
+        if (failure != null) {
+            IOException e = failure instanceof IOException
+                    ? (IOException) failure
+                    : new IOException("Failed to fetch ranges of " + uri, failure);
+            failures.forEach(e::addSuppressed);
+            throw e;
+        }
+    }
+
+    private void fetchRanges(FileChannel channel) {
+        int index;
+        while ((index = nextRange.getAndIncrement()) < rangeCount) {
+            try {
+                // Remaining ranges are claimed but not fetched after a failure.
+                if (failures.isEmpty()) {
+                    fetchRange(channel, index);
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                failures.add(e);
+            }
+            finally {
+                rangesEnded.countDown();
+            }
+        }
+    }
+
+    private void fetchRange(FileChannel channel, int index) throws IOException {
+        long start = index * rangeSize;
+        long end = Math.min(contentLength, start + rangeSize) - 1;
+
+        TransportRequest request = TransportRequest.get(uri)
+                // Ranges of a compressed body would not match the initial response.
+                .header("Accept-Encoding", "identity")
+                .header("Range", "bytes=" + start + "-" + end)
+                .header("If-Range", ifRange);
+        try (TransportResponse response = transport.send(request)) {
+            String expectedContentRange = "bytes " + start + "-" + end + "/" + contentLength;
+            if (response.getStatusCode() != 206 || !expectedContentRange.equals(response.getFirstHeader("Content-Range"))) {
+                // A 200 response here means that the resource changed since the initial request.
+                throw new IOException("Unexpected response " + response.getStatusCode() + " with Content-Range "
+                        + response.getFirstHeader("Content-Range") + " for range " + start + "-" + end + " of " + uri);
+            }
+            writeRange(channel, index, response.getBody());
+        }
+    }
+
+    private void writeRange(FileChannel channel, int index, InputStream in) throws IOException {
+        long start = index * rangeSize;
+        long remaining = Math.min(contentLength - start, rangeSize);
+        long position = start;
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        while (remaining > 0) {
+            if (!failures.isEmpty()) {
+                // Another range has failed, the error is reported by write().
+                return;
+            }
+            int count = in.read(buffer.array(), 0, (int) Math.min(buffer.capacity(), remaining));
+            if (count == -1) {
+                throw new EOFException("Range starting at " + start + " of " + uri + " ended after " + (position - start) + " bytes");
+            }
+            buffer.clear().limit(count);
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            remaining -= count;
+        }
+    }
+
+    private void closeInitialBody() {
+        try {
+            // The rest of the initial body is not needed.
+            initialBody.close();
+        }
+        catch (IOException e) {
+            LOGGER.debug("Failed to close initial response for {}", uri, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closeInitialBody();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("uri", uri)
+                .add("contentLength", contentLength)
+                .add("rangeCount", rangeCount)
+                .toString();
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Counts of outcomes from {@link WebCache#prefetchAll}.
+ */
+public final class PrefetchSummary {
+
+    private final AtomicInteger cachedCount = new AtomicInteger();
+    private final AtomicInteger notModifiedCount = new AtomicInteger();
+    private final AtomicInteger modifiedCount = new AtomicInteger();
+    private final AtomicInteger staleCount = new AtomicInteger();
+    private final AtomicInteger notFoundCount = new AtomicInteger();
+    private final Queue<Failure> failures = new ConcurrentLinkedQueue<>();
+    private Duration elapsed;
+
+    PrefetchSummary() {
+    }
+
+    void addOutcome(FetchOutcome outcome) {
+        switch (outcome) {
+            case CACHED:
+                cachedCount.incrementAndGet();
+                break;
+            case NOT_MODIFIED:
+                notModifiedCount.incrementAndGet();
+                break;
+            case MODIFIED:
+                modifiedCount.incrementAndGet();
+                break;
+            case STALE:
+                staleCount.incrementAndGet();
+                break;
+            case NOT_FOUND:
+                notFoundCount.incrementAndGet();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown outcome " + outcome);
+        }
+    }
+
+    void addFailure(ExternalDataResource resource, RuntimeException failure) {
+        failures.add(new Failure(resource, failure));
+    }
+
+    void setElapsed(Duration elapsed) {
+        this.elapsed = elapsed;
+    }
+
+    /** Local copies which had not expired. */
+    public int getCachedCount() {
+        return cachedCount.get();
+    }
+
+    /** Local copies which had expired, but were confirmed to be unchanged (304). */
+    public int getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    /** Local copies which were created or updated (200). */
+    public int getModifiedCount() {
+        return modifiedCount.get();
+    }
+
+    /** Expired local copies which were kept because the fetch failed. */
+    public int getStaleCount() {
+        return staleCount.get();
+    }
+
+    /** Resources which were not found, with negative caching. */
+    public int getNotFoundCount() {
+        return notFoundCount.get();
+    }
+
+    public int getFailureCount() {
+        return failures.size();
+    }
+
+    /** Failures in the order they happened, possibly several for a resource. */
+    public List<Failure> getFailures() {
+        return List.copyOf(failures);
+    }
+
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("cached", cachedCount)
+                .add("notModified", notModifiedCount)
+                .add("modified", modifiedCount)
+                .add("stale", staleCount)
+                .add("notFound", notFoundCount)
+                .add("failed", failures.size())
+                .add("elapsed", elapsed)
+                .toString();
+    }
+
+    public static final class Failure {
+
+        private final ExternalDataResource resource;
+        private final RuntimeException exception;
+
+        private Failure(ExternalDataResource resource, RuntimeException exception) {
+            this.resource = resource;
+            this.exception = exception;
+        }
+
+        public ExternalDataResource getResource() {
+            return resource;
+        }
+
+        public RuntimeException getException() {
+            return exception;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("resource", resource.name())
+                    .add("exception", exception)
+                    .toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fetches many resources in parallel, with limits on the total number of
+ * concurrent fetches and on the number of concurrent fetches for each host.
+ * Used via {@link WebCache#prefetchAll}.
+ */
+final class Prefetcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Prefetcher.class);
+
+    private final int maxConcurrent;
+    private final int maxConcurrentPerHost;
+    private final Executor executor;
+
+    Prefetcher(int maxConcurrent, int maxConcurrentPerHost, Executor executor) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("maxConcurrent must be positive");
+        }
+        if (maxConcurrentPerHost <= 0) {
+            throw new IllegalArgumentException("maxConcurrentPerHost must be positive");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxConcurrentPerHost = maxConcurrentPerHost;
+        this.executor = executor;
+    }
+
+    PrefetchSummary prefetchAll(Collection<? extends ExternalDataResource> resources) {
+        long startNanos = System.nanoTime();
+        PrefetchSummary summary = new PrefetchSummary();
+
+        // Each host gets its own queue, drained by at most maxConcurrentPerHost workers,
+        // so a host with many resources does not hold up other hosts.
+        Map<String, Queue<ExternalDataResource>> hostQueues = new LinkedHashMap<>();
+        for (ExternalDataResource resource : resources) {
+            hostQueues.computeIfAbsent(host(resource), h -> new ConcurrentLinkedQueue<>()).add(resource);
+        }
+
+        Semaphore permits = new Semaphore(maxConcurrent, true);
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (Queue<ExternalDataResource> hostQueue : hostQueues.values()) {
+            int workerCount = Math.min(maxConcurrentPerHost, hostQueue.size());
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(CompletableFuture.runAsync(() -> drain(hostQueue, permits, summary), executor));
+            }
+        }
+        CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[0])).join();
+
+        summary.setElapsed(Duration.ofNanos(System.nanoTime() - startNanos));
+        LOGGER.info("Prefetched {} resources from {} hosts: {}", resources.size(), hostQueues.size(), summary);
+
+        return summary;
+    }
+
+    private void drain(Queue<ExternalDataResource> hostQueue, Semaphore permits, PrefetchSummary summary) {
+        ExternalDataResource resource;
+        while ((resource = hostQueue.poll()) != null) {
+            try {
+                permits.acquire();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                summary.addFailure(resource, new IllegalStateException("Interrupted before prefetching " + resource.name(), e));
+                continue;
+            }
+
+            try {
+                summary.addOutcome(resource.prefetch());
+            }
+            catch (RuntimeException e) {
+                LOGGER.warn("Failed to prefetch {}", resource.name(), e);
+                summary.addFailure(resource, e);
+            }
+            finally {
+                permits.release();
+            }
+        }
+    }
+
+    private String host(ExternalDataResource resource) {
+        if (resource instanceof WebCache) {
+            return ((WebCache) resource).getHost();
+        }
+        // Local files etc.
+        return "";
+    }
+
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Refreshes resources in the background shortly before they expire, so that
+ * reads find fresh local copies. Expiry times come from listeners, see
+ * {@link ExternalDataResource#getExpiry()}. Resources with no known expiry
+ * are fetched if required when added, but are not refreshed.
+ * </p>
+ * <p>
+ * Each refresh happens between the lead time and half the lead time before
+ * expiry, chosen at random so that resources with the same expiry (such as
+ * {@code ExpiryListeners.daily()}) do not all hit the origin at once. If
+ * a refresh does not move the expiry on, as for calendar rules like
+ * {@code daily()} which only expire at the boundary, the next refresh is
+ * instead between the expiry and half the lead time after it.
+ * </p>
+ */
+public final class RefreshScheduler implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RefreshScheduler.class);
+
+    private static final Duration DEFAULT_LEAD_TIME = Duration.ofMinutes(1);
+    private static final int DEFAULT_MAX_CONCURRENT = 4;
+
+    // Avoids refreshing continuously if a refresh does not move the expiry on, perhaps because the origin is failing.
+    private static final Duration MIN_INTERVAL = Duration.ofSeconds(10);
+
+    private final Duration leadTime;
+    private final Executor executor;
+    private final Semaphore permits;
+    private final DelayQueue<ScheduledRefresh> queue = new DelayQueue<>();
+    // The latest refresh for each resource. Queued refreshes which are not in this map are ignored.
+    private final ConcurrentMap<ExternalDataResource, ScheduledRefresh> scheduled = new ConcurrentHashMap<>();
+    private final Thread dispatcher;
+    private volatile boolean isClosed;
+
+    public RefreshScheduler() {
+        this(DEFAULT_LEAD_TIME, DEFAULT_MAX_CONCURRENT);
+    }
+
+    public RefreshScheduler(Duration leadTime, int maxConcurrent) {
+        this(leadTime, maxConcurrent, WebCacheExecutors.getDefaultExecutor());
+    }
+
+    public RefreshScheduler(Duration leadTime, int maxConcurrent, Executor executor) {
+        if (leadTime == null || leadTime.isNegative()) {
+            throw new IllegalArgumentException("leadTime must not be negative");
+        }
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("maxConcurrent must be positive");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        this.leadTime = leadTime;
+        this.permits = new Semaphore(maxConcurrent);
+        this.executor = executor;
+
+        dispatcher = new ThreadFactoryBuilder()
+                .setNameFormat("webcache-refresh-%d")
+                .setDaemon(true)
+                .build()
+                .newThread(this::dispatch);
+        dispatcher.start();
+    }
+
+    /**
+     * The resource is fetched now if required, and then refreshed before each
+     * expiry until removed.
+     */
+    public RefreshScheduler add(ExternalDataResource resource) {
+        if (isClosed) {
+            throw new IllegalStateException("Scheduler has been closed");
+        }
+        ScheduledRefresh refresh = new ScheduledRefresh(resource, Instant.now(), null, true);
+        if (scheduled.putIfAbsent(resource, refresh) == null) {
+            queue.add(refresh);
+        }
+        return this;
+    }
+
+    public RefreshScheduler addAll(Collection<? extends ExternalDataResource> resources) {
+        for (ExternalDataResource resource : resources) {
+            add(resource);
+        }
+        return this;
+    }
+
+    public RefreshScheduler remove(ExternalDataResource resource) {
+        scheduled.remove(resource);
+        return this;
+    }
+
+    /** When the resource will next be refreshed, or null if it is not scheduled. */
+    public Instant getNextRefresh(ExternalDataResource resource) {
+        ScheduledRefresh refresh = scheduled.get(resource);
+        return refresh == null ? null : refresh.due;
+    }
+
+    @Override
+    public void close() {
+        isClosed = true;
+        dispatcher.interrupt();
+        scheduled.clear();
+        queue.clear();
+    }
+
+    private void dispatch() {
+        try {
+            while (!isClosed) {
+                ScheduledRefresh refresh = queue.take();
+                if (scheduled.get(refresh.resource) != refresh) {
+                    // Removed.
+                    continue;
+                }
+
+                permits.acquire();
+                try {
+                    executor.execute(() -> run(refresh));
+                }
+                catch (RejectedExecutionException e) {
+                    permits.release();
+                    LOGGER.warn("Failed to start refresh of {}", refresh.resource.name(), e);
+                    reschedule(refresh, Instant.now().plus(MIN_INTERVAL), refresh.expiry);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            // Closed.
+        }
+    }
+
+    private void run(ScheduledRefresh refresh) {
+        try {
+            // Initially only fetch if required, the local copy may already be fresh.
+            FetchOutcome outcome = refresh.isInitial ? refresh.resource.prefetch() : refresh.resource.refresh();
+            LOGGER.debug("Background refresh of {}: {}", refresh.resource.name(), outcome);
+        }
+        catch (RuntimeException e) {
+            LOGGER.warn("Background refresh failed for {}", refresh.resource.name(), e);
+        }
+        finally {
+            permits.release();
+        }
+
+        ZonedDateTime expiry = null;
+        try {
+            expiry = refresh.resource.getExpiry();
+        }
+        catch (RuntimeException e) {
+            LOGGER.warn("Failed to determine expiry of {}", refresh.resource.name(), e);
+        }
+
+        if (expiry == null) {
+            LOGGER.info("No expiry known for {}, it will not be refreshed", refresh.resource.name());
+            scheduled.remove(refresh.resource, refresh);
+            return;
+        }
+
+        Instant expiryInstant = expiry.toInstant();
+        reschedule(refresh, nextRefresh(expiryInstant, refresh.expiry, leadTime, Instant.now()), expiryInstant);
+    }
+
+    /**
+     * Between the lead time and half the lead time before expiry, or if the
+     * previous refresh left the expiry unchanged, between the expiry and half
+     * the lead time after it. Never sooner than {@link #MIN_INTERVAL} from now.
+     */
+    static Instant nextRefresh(Instant expiry, Instant previousExpiry, Duration leadTime, Instant now) {
+        long leadNanos = leadTime.toNanos();
+        long jitterNanos = leadNanos < 2 ? 0 : ThreadLocalRandom.current().nextLong(leadNanos / 2);
+        Instant next = expiry.equals(previousExpiry) ? expiry.plusNanos(jitterNanos) : expiry.minusNanos(leadNanos - jitterNanos);
+
+        Instant earliest = now.plus(MIN_INTERVAL);
+        return next.isBefore(earliest) ? earliest : next;
+    }
+
+    private void reschedule(ScheduledRefresh previous, Instant due, Instant expiry) {
+        ScheduledRefresh next = new ScheduledRefresh(previous.resource, due, expiry, false);
+        // Not replaced if the resource was removed in the meantime.
+        if (!isClosed && scheduled.replace(previous.resource, previous, next)) {
+            queue.add(next);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("leadTime", leadTime)
+                .add("scheduled", scheduled.size())
+                .toString();
+    }
+
+    private static final class ScheduledRefresh implements Delayed {
+
+        private final ExternalDataResource resource;
+        private final Instant due;
+        // The expiry this refresh was scheduled for, null for the initial fetch.
+        private final Instant expiry;
+        private final boolean isInitial;
+
+        ScheduledRefresh(ExternalDataResource resource, Instant due, Instant expiry, boolean isInitial) {
+            this.resource = resource;
+            this.due = due;
+            this.expiry = expiry;
+            this.isInitial = isInitial;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Duration.between(Instant.now(), due));
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return due.compareTo(((ScheduledRefresh) other).due);
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The body of a resource, flagged if it is a stale local copy, see
+ * {@link ExternalDataResource#openInputStream(java.time.Duration)}.
+ */
+public final class ResourceInputStream extends FilterInputStream {
+
+    private final boolean isStale;
+
+    ResourceInputStream(InputStream in, boolean isStale) {
+        super(in);
+        this.isStale = isStale;
+    }
+
+    /**
+     * True if the local copy has expired and could not be refreshed in time,
+     * or the fetch failed and stale-if-error allowed the local copy to be
+     * used.
+     */
+    public boolean isStale() {
+        return isStale;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        return in.read(b, off, len);
+    }
+
+}
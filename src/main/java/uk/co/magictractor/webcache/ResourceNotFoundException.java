@@ -0,0 +1,39 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache;
+
+/**
+ * The external resource does not exist (404 or 410 for HTTP). Thrown when
+ * reading the resource, including while a "not found" result is cached, see
+ * {@link WebCache#withNotFoundTtl(java.time.Duration)}. Extends
+ * IllegalStateException, which was thrown for these responses previously.
+ */
+public class ResourceNotFoundException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public ResourceNotFoundException(String resourceName, int statusCode) {
+        super("Not found: " + statusCode + " for " + resourceName);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+}
@@ -26,33 +26,89 @@ import java.io.InputStream;
 public class ResourceStreamSupplier implements AutoCloseable {
 
     public static ResourceStreamSupplier notModified() {
-        return new ResourceStreamSupplier(false, null);
+        return new ResourceStreamSupplier(false, false, null, 0, null, 0);
+    }
+
+    /**
+     * The external resource does not exist (404 or 410 status code from HTTP),
+     * and this result should be cached. There is no body.
+     */
+    public static ResourceStreamSupplier notFound() {
+        return new ResourceStreamSupplier(false, true, null, 0, null, 0);
     }
 
     public static ResourceStreamSupplier forStream(InputStream inputStream) {
-        return new ResourceStreamSupplier(true, inputStream);
+        return new ResourceStreamSupplier(true, false, inputStream, 0, null, 0);
+    }
+
+    /**
+     * The stream continues partial content kept from an earlier fetch (206
+     * status code from HTTP range requests).
+     */
+    public static ResourceStreamSupplier forResumedStream(InputStream inputStream, long resumeOffset) {
+        return new ResourceStreamSupplier(true, false, inputStream, resumeOffset, null, 0);
+    }
+
+    /**
+     * The body is written by position rather than read from a stream, for
+     * example when fetching ranges in parallel.
+     */
+    public static ResourceStreamSupplier forContentWriter(CacheDataResource.ContentWriter contentWriter, long contentLength) {
+        return new ResourceStreamSupplier(true, false, null, 0, contentWriter, contentLength);
     }
 
     private final boolean isModified;
+    private final boolean isNotFound;
     private final InputStream inputStream;
+    private final long resumeOffset;
+    private final CacheDataResource.ContentWriter contentWriter;
+    private final long contentLength;
 
-    private ResourceStreamSupplier(boolean isModified, InputStream inputStream) {
+    private ResourceStreamSupplier(boolean isModified, boolean isNotFound, InputStream inputStream, long resumeOffset,
+            CacheDataResource.ContentWriter contentWriter, long contentLength) {
         this.isModified = isModified;
+        this.isNotFound = isNotFound;
         this.inputStream = inputStream;
+        this.resumeOffset = resumeOffset;
+        this.contentWriter = contentWriter;
+        this.contentLength = contentLength;
     }
 
     public boolean isModified() {
         return isModified;
     }
 
+    public boolean isNotFound() {
+        return isNotFound;
+    }
+
+    /** Zero unless the stream continues partial content. */
+    public long getResumeOffset() {
+        return resumeOffset;
+    }
+
+    /** Null if the body is written by a content writer. */
     public InputStream getInputStream() {
         return inputStream;
     }
 
+    /** Null unless the body is written by position. */
+    public CacheDataResource.ContentWriter getContentWriter() {
+        return contentWriter;
+    }
+
+    /** The size of the body written by the content writer. */
+    public long getContentLength() {
+        return contentLength;
+    }
+
     @Override
     public void close() throws IOException {
         if (inputStream != null) {
             inputStream.close();
         }
+        if (contentWriter != null) {
+            contentWriter.close();
+        }
     }
 }
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Copies bytes to an output stream as they are read, so that a caller can
+ * read an external resource while it is being saved to the local cache.
+ * Closing the stream before the end has been reached reads (and copies) the
+ * remaining bytes, so that the local copy is always complete.
+ */
+final class TeeInputStream extends FilterInputStream {
+
+    interface Listener {
+
+        /**
+         * Called once, after all bytes have been copied and the copy has been
+         * closed. Responsible for its own clean up if it fails.
+         */
+        void completed() throws IOException;
+
+        /** Called once, after the copy has been discarded if reading or copying failed. */
+        void aborted(Exception cause);
+    }
+
+    private final OutputStream copy;
+    private final Listener listener;
+    private boolean isFinished;
+
+    TeeInputStream(InputStream in, OutputStream copy, Listener listener) {
+        super(in);
+        this.copy = copy;
+        this.listener = listener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (isFinished) {
+            return -1;
+        }
+        try {
+            int b = super.read();
+            if (b == -1) {
+                complete();
+            }
+            else {
+                copy.write(b);
+            }
+            return b;
+        }
+        catch (IOException | RuntimeException e) {
+            abort(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (isFinished) {
+            return -1;
+        }
+        try {
+            int count = super.read(buffer, offset, length);
+            if (count == -1) {
+                complete();
+            }
+            else {
+                copy.write(buffer, offset, count);
+            }
+            return count;
+        }
+        catch (IOException | RuntimeException e) {
+            abort(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        // Read rather than skip so that skipped bytes are copied.
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        int count = read(buffer, 0, buffer.length);
+        return count == -1 ? 0 : count;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            byte[] buffer = new byte[8192];
+            while (!isFinished) {
+                read(buffer, 0, buffer.length);
+            }
+        }
+        finally {
+            super.close();
+        }
+    }
+
+    private void complete() throws IOException {
+        isFinished = true;
+        try {
+            copy.close();
+        }
+        catch (IOException e) {
+            listener.aborted(e);
+            throw e;
+        }
+        listener.completed();
+    }
+
+    private void abort(Exception cause) {
+        if (isFinished) {
+            // Failure while completing, the listener has already been notified.
+            return;
+        }
+        isFinished = true;
+        // Leaves any previous local copy in place.
+        AtomicFileOutputStream.abort(copy);
+        listener.aborted(cause);
+    }
+
+}
@@ -16,15 +16,27 @@
 package uk.co.magictractor.webcache;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.http.HttpClient;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 
 import com.google.common.base.MoreObjects;
 
 import uk.co.magictractor.webcache.listeners.ExternalDataResourceListener;
+import uk.co.magictractor.webcache.transport.HttpClientTransport;
+import uk.co.magictractor.webcache.transport.HttpTransport;
+import uk.co.magictractor.webcache.transport.TransportRequest;
+import uk.co.magictractor.webcache.transport.TransportResponse;
 
 /**
  *
@@ -34,17 +46,86 @@ public class WebCache extends AbstractExternalDataResource {
 
     private static final String HEADERS_FILE = "headers.txt";
 
+    // Smaller bodies are fetched with a single request even if parallel ranges are enabled.
+    private static final long MIN_PARALLEL_RANGE_SIZE = 1024 * 1024;
+
+    private static final HostRateLimiter HOST_RATE_LIMITER = new HostRateLimiter();
+
+    private static final HttpClientTransport HTTP_CLIENT_TRANSPORT = new HttpClientTransport();
+
+    /**
+     * Shared by all instances (unless replaced) so that keep-alive and HTTP/2
+     * connections are reused when refreshing many resources from the same
+     * hosts. Requests are not retried, see
+     * {@link #setDefaultTransport(HttpTransport)}.
+     */
+    private static volatile HttpTransport defaultTransport = HTTP_CLIENT_TRANSPORT;
+
+    /**
+     * Every request sent by a WebCache waits for the rate limit for its host,
+     * which is unlimited unless set. This applies whichever transport is used,
+     * including transports given to {@link #withTransport(HttpTransport)} and
+     * {@link #setDefaultTransport(HttpTransport)}. Retries within those
+     * transports are part of the same request, so are not limited again.
+     */
+    public static HostRateLimiter getHostRateLimiter() {
+        return HOST_RATE_LIMITER;
+    }
+
+    /**
+     * Change the transport used by instances which have not been given a
+     * transport using {@link #withTransport(HttpTransport)}. Typically used to
+     * substitute a {@code StandInOrigin} for tests and load tests, or to
+     * retry failed requests and fail fast for hosts which are down, for
+     * example
+     *
+     * <pre>
+     * WebCache.setDefaultTransport(new RetryingTransport(new CircuitBreakingTransport(new HttpClientTransport())));
+     * </pre>
+     *
+     * The transport should be shared so that circuit breakers trip for all
+     * resources from a host.
+     */
+    public static void setDefaultTransport(HttpTransport transport) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport must not be null");
+        }
+        defaultTransport = transport;
+    }
+
+    /**
+     * Instances for the same normalised URL share properties, local copies and
+     * the lock used for fetches, so repeated lookups do not re-read files.
+     * Listeners are not shared.
+     */
     public static WebCache of(String resourceName) {
         return new WebCache(resourceName);
     }
 
+    /**
+     * Fetch resources which are missing or expired in parallel, with up to 16
+     * concurrent fetches and up to 4 concurrent fetches for any one host.
+     */
+    public static PrefetchSummary prefetchAll(Collection<? extends ExternalDataResource> resources) {
+        return prefetchAll(resources, 16, 4);
+    }
+
+    public static PrefetchSummary prefetchAll(Collection<? extends ExternalDataResource> resources, int maxConcurrent, int maxConcurrentPerHost) {
+        return new Prefetcher(maxConcurrent, maxConcurrentPerHost, WebCacheExecutors.getDefaultExecutor()).prefetchAll(resources);
+    }
+
     private final URL externalUrl;
+    private final URI externalUri;
+    private HttpTransport transport;
+    private volatile int parallelRanges = 1;
+    private volatile Duration notFoundTtl;
 
     private WebCache(String externalUrlSpec) {
         try {
-            externalUrl = new URL(externalUrlSpec);
+            externalUri = normalise(new URL(externalUrlSpec).toURI());
+            externalUrl = externalUri.toURL();
         }
-        catch (MalformedURLException e) {
+        catch (MalformedURLException | URISyntaxException e) {
             throw new IllegalArgumentException("Invalid URL spec: " + externalUrlSpec, e);
         }
 
@@ -55,7 +136,143 @@ public class WebCache extends AbstractExternalDataResource {
                         + " should only be used for http and https protocols, not suitable for "
                         + externalUrl);
         }
+    }
+
+    /**
+     * Lower case scheme and host, no default port, no fragment and an empty
+     * path becomes "/", so that equivalent URLs share a cache directory.
+     */
+    private static URI normalise(URI uri) throws URISyntaxException {
+        if (uri.getHost() == null) {
+            throw new URISyntaxException(uri.toString(), "No host");
+        }
+        String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+        int port = uri.getPort();
+        if (("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) {
+            port = -1;
+        }
+
+        StringBuilder uriBuilder = new StringBuilder();
+        uriBuilder.append(scheme).append("://");
+        if (uri.getRawUserInfo() != null) {
+            uriBuilder.append(uri.getRawUserInfo()).append('@');
+        }
+        uriBuilder.append(uri.getHost().toLowerCase(Locale.ROOT));
+        if (port != -1) {
+            uriBuilder.append(':').append(port);
+        }
+        String path = uri.getRawPath();
+        uriBuilder.append(path == null || path.isEmpty() ? "/" : path);
+        if (uri.getRawQuery() != null) {
+            uriBuilder.append('?').append(uri.getRawQuery());
+        }
+
+        return new URI(uriBuilder.toString()).normalize();
+    }
+
+    /**
+     * Use a specific transport for this resource rather than the default
+     * transport.
+     */
+    public WebCache withTransport(HttpTransport transport) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport must not be null");
+        }
+        this.transport = transport;
+        return this;
+    }
+
+    /**
+     * Use a different client, perhaps with a different connect timeout, proxy
+     * or SSL context. Clients should be shared between instances where
+     * possible so that connections are reused. This is a shortcut for
+     * {@link #withTransport(HttpTransport)} with an
+     * {@link HttpClientTransport}, which replaces any other transport.
+     */
+    public WebCache withHttpClient(HttpClient httpClient) {
+        return withTransport(new HttpClientTransport(httpClient, getHttpClientTransport().getReadTimeout()));
+    }
+
+    /**
+     * Maximum time to wait for response headers after a request has been
+     * sent. The connect timeout is a property of the {@code HttpClient}. This
+     * is a shortcut for {@link #withTransport(HttpTransport)} with an
+     * {@link HttpClientTransport}, which replaces any other transport.
+     */
+    public WebCache withReadTimeout(Duration readTimeout) {
+        return withTransport(new HttpClientTransport(getHttpClientTransport().getHttpClient(), readTimeout));
+    }
+
+    private HttpClientTransport getHttpClientTransport() {
+        return transport instanceof HttpClientTransport ? (HttpClientTransport) transport : HTTP_CLIENT_TRANSPORT;
+    }
+
+    /**
+     * Fetch large bodies as up to the given number of ranges in parallel,
+     * which can be faster than a single connection for big static files. Only
+     * used if the origin sends Accept-Ranges, Content-Length and a strong
+     * validator, and does not compress the body. Each range is at least 1MiB.
+     * Bodies fetched in parallel cannot be resumed if the fetch fails.
+     */
+    public WebCache withParallelRanges(int parallelRanges) {
+        if (parallelRanges < 1) {
+            throw new IllegalArgumentException("parallelRanges must be at least 1");
+        }
+        this.parallelRanges = parallelRanges;
+        return this;
+    }
+
+    /**
+     * Cache "not found" (404 and 410) responses for the given time, rather
+     * than asking the origin again on every read. While cached, reads throw
+     * {@link ResourceNotFoundException} without a request, and prefetches
+     * return {@link FetchOutcome#CACHED}. Null, the default, asks the origin
+     * every time.
+     */
+    public WebCache withNotFoundTtl(Duration notFoundTtl) {
+        if (notFoundTtl != null && notFoundTtl.isNegative()) {
+            throw new IllegalArgumentException("notFoundTtl must not be negative");
+        }
+        this.notFoundTtl = notFoundTtl;
+        return this;
+    }
+
+    @Override
+    public WebCache withStreaming(boolean isStreaming) {
+        super.withStreaming(isStreaming);
+        return this;
+    }
+
+    @Override
+    public WebCache withStaleWhileRevalidate(Duration maxStaleness) {
+        super.withStaleWhileRevalidate(maxStaleness);
+        return this;
+    }
+
+    @Override
+    public WebCache withStaleIfError(Duration maxStaleness) {
+        super.withStaleIfError(maxStaleness);
+        return this;
+    }
 
+    @Override
+    public WebCache withKeepUncompressedCopy(boolean isKeepUncompressedCopy) {
+        super.withKeepUncompressedCopy(isKeepUncompressedCopy);
+        return this;
+    }
+
+    @Override
+    public WebCache withResumable(boolean isResumable) {
+        super.withResumable(isResumable);
+        return this;
+    }
+
+    private HttpTransport getTransport() {
+        return HOST_RATE_LIMITER.limit(transport == null ? defaultTransport : transport);
+    }
+
+    public String getHost() {
+        return externalUrl.getHost();
     }
 
     @Override
@@ -92,58 +309,223 @@ public class WebCache extends AbstractExternalDataResource {
         return copyNameBuilder.toString();
     }
 
-    // TODO! also "Expires" etc?
     @Override
     public ResourceStreamSupplier fetchResource() throws IOException {
         CacheProperties properties = getProperties();
 
-        HttpURLConnection httpConnection = (HttpURLConnection) externalUrl.openConnection();
+        // Skip the round trip for a permanent redirect. Temporary redirects are followed by the transport each time.
+        URI requestUri = properties.getPermanentRedirect() == null ? externalUri : URI.create(properties.getPermanentRedirect());
+        TransportRequest request = TransportRequest.get(requestUri);
+        // The body is stored as received, and decoded as it is read.
+        request.header("Accept-Encoding", ContentEncodings.ACCEPT_ENCODING);
         if (properties.getLastModified() != null) {
-            httpConnection.setRequestProperty("If-Modified-Since", properties.getLastModified());
+            request.header("If-Modified-Since", properties.getLastModified());
         }
+        boolean isRevalidation = properties.getLastModified() != null || properties.getEtag() != null;
         if (properties.getEtag() != null) {
             // Weak validation ("W/" prefix) is fine, it indicates that we only care about the content.
-            httpConnection.setRequestProperty("If-None-Match", "W/" + properties.getEtag());
+            request.header("If-None-Match", "W/" + properties.getEtag());
         }
 
-        StringBuilder headersBuilder = new StringBuilder();
-        int headerIndex = 0;
-        while (true) {
-            String headerValue = httpConnection.getHeaderField(headerIndex);
-            if (headerValue == null) {
-                break;
+        // Resume a partial body from an earlier fetch, if the external resource is unchanged.
+        CacheProperties partial = getPartialProperties();
+        long resumeOffset = 0;
+        if (partial != null) {
+            String ifRange = ifRangeValidator(partial);
+            if (ifRange != null) {
+                resumeOffset = getCacheDataResource(partial.getBodyName()).partialSize();
+                request.header("Range", "bytes=" + resumeOffset + "-");
+                request.header("If-Range", ifRange);
             }
-            String headerName = httpConnection.getHeaderFieldKey(headerIndex);
-            if (headerName != null) {
+            else {
+                discardPartial();
+            }
+        }
+
+        TransportResponse response = getTransport().send(request);
+        int statusCode = response.getStatusCode();
+
+        if ((statusCode == 404 || statusCode == 410) && !requestUri.equals(externalUri)) {
+            // The redirect may no longer apply, so ask the original URL again.
+            getLogger().info("Received {} for {}, forgetting permanent redirect from {}", statusCode, requestUri, name());
+            response.close();
+            getProperties().setPermanentRedirect(null);
+            return fetchResource();
+        }
+        if (response.getPermanentRedirectUri() != null) {
+            getLogger().info("{} has been permanently redirected to {}", name(), response.getPermanentRedirectUri());
+            getProperties().setPermanentRedirect(response.getPermanentRedirectUri().toString());
+        }
+
+        if (statusCode == 404 || statusCode == 410) {
+            // Headers of the error response are not recorded, so the properties of any previous body are kept.
+            response.close();
+            return notFound(statusCode);
+        }
+        getProperties().setNotFoundStatus(0);
+        getProperties().setNotFoundUntil(null);
+
+        StringBuilder headersBuilder = new StringBuilder();
+        if (response.getStatusLine() != null) {
+            headersBuilder.append(response.getStatusLine());
+            headersBuilder.append('\n');
+        }
+        for (Map.Entry<String, List<String>> header : response.getHeaders().entrySet()) {
+            String headerName = header.getKey();
+            for (String headerValue : header.getValue()) {
                 headersBuilder.append(headerName);
                 headersBuilder.append(": ");
+                headersBuilder.append(headerValue);
+                headersBuilder.append('\n');
                 updateProperties(headerName, headerValue);
             }
-            else {
-                if (headerIndex != 0) {
-                    // Should only be for the first line like
-                    // HTTP/1.1 200 OK
-                    throw new IllegalStateException();
-                }
-            }
-            headersBuilder.append(headerValue);
-            headersBuilder.append('\n');
+        }
+        getCacheDataResource(HEADERS_FILE).setContent(headersBuilder.toString(), StandardCharsets.UTF_8);
+        ZonedDateTime responseTime = ZonedDateTime.now();
+        getProperties().setTimestamp(responseTime);
 
-            headerIndex++;
+        // 304 responses should include the same caching headers as a 200 response would.
+        HttpFreshness freshness = HttpFreshness.of(response, responseTime);
+        getProperties().setDate(freshness.getDate());
+        getProperties().setFreshUntil(freshness.getFreshUntil());
+        getProperties().setMustRevalidate(freshness.isMustRevalidate());
 
+        if (isRevalidation && (statusCode == 200 || statusCode == 206 || statusCode == 304)) {
+            getProperties().recordRevalidation(statusCode != 304);
+        }
+
+        if (statusCode == 206) {
+            return resumed(response, partial, resumeOffset);
+        }
+        if (statusCode == 416) {
+            // The partial body is no longer valid, so fetch everything.
+            response.close();
+            discardPartial();
+            return fetchResource();
+        }
+        if (resumeOffset > 0) {
+            // Discard now in case the body name has changed.
+            discardPartial();
         }
-        getCacheDataResource(HEADERS_FILE).setContent(headersBuilder.toString(), StandardCharsets.UTF_8);
-        getProperties().setTimestamp(ZonedDateTime.now());
 
-        int statusCode = httpConnection.getResponseCode();
         if (statusCode == 200) {
-            return ResourceStreamSupplier.forStream(httpConnection.getInputStream());
+            try {
+                // Not set for 304 responses, the existing body keeps its encoding.
+                getProperties().setContentEncoding(response.getFirstHeader("Content-Encoding"));
+                ParallelRangeFetch parallelRangeFetch = parallelRangeFetch(response);
+                if (parallelRangeFetch != null) {
+                    return ResourceStreamSupplier.forContentWriter(parallelRangeFetch, parallelRangeFetch.getContentLength());
+                }
+            }
+            catch (RuntimeException e) {
+                response.close();
+                throw e;
+            }
+            return ResourceStreamSupplier.forStream(response.getBody());
         }
-        else if (statusCode == 304) {
+
+        // Release the connection for reuse.
+        response.close();
+
+        if (statusCode == 304) {
             return ResourceStreamSupplier.notModified();
         }
 
-        throw new IllegalStateException("Unexpected response: " + statusCode + " " + httpConnection.getResponseMessage());
+        throw new IllegalStateException("Unexpected response: " + statusCode + " for " + name());
+    }
+
+    private ResourceStreamSupplier notFound(int statusCode) {
+        Duration ttl = notFoundTtl;
+        if (ttl == null) {
+            throw new ResourceNotFoundException(name(), statusCode);
+        }
+
+        ZonedDateTime responseTime = ZonedDateTime.now();
+        CacheProperties properties = getProperties();
+        properties.setTimestamp(responseTime);
+        properties.setNotFoundStatus(statusCode);
+        properties.setNotFoundUntil(responseTime.plus(ttl));
+        return ResourceStreamSupplier.notFound();
+    }
+
+    private ResourceStreamSupplier resumed(TransportResponse response, CacheProperties partial, long resumeOffset) throws IOException {
+        String contentRange = response.getFirstHeader("Content-Range");
+        String contentEncoding = response.getFirstHeader("Content-Encoding");
+        if (resumeOffset == 0 || contentRangeStart(contentRange) != resumeOffset
+                || (contentEncoding != null && !Objects.equals(ContentEncodings.normalise(contentEncoding), partial.getContentEncoding()))) {
+            response.close();
+            discardPartial();
+            throw new IllegalStateException("Unexpected partial response with Content-Range " + contentRange + " for " + name());
+        }
+
+        getLogger().info("Resuming from byte {} for {}", resumeOffset, name());
+
+        // Partial responses may omit headers describing the content, which are the same as for the partial body.
+        CacheProperties properties = getProperties();
+        properties.setContentType(partial.getContentType());
+        if (partial.getCharsetName() != null) {
+            properties.setCharsetName(partial.getCharsetName());
+        }
+        properties.setContentEncoding(partial.getContentEncoding());
+        properties.setBodyExtension(partial.getBodyExtension());
+        properties.setEtag(partial.getEtag());
+        properties.setLastModified(partial.getLastModified());
+
+        return ResourceStreamSupplier.forResumedStream(response.getBody(), resumeOffset);
+    }
+
+    private ParallelRangeFetch parallelRangeFetch(TransportResponse response) {
+        int maxRanges = parallelRanges;
+        if (maxRanges < 2 || !"bytes".equalsIgnoreCase(response.getFirstHeader("Accept-Ranges")) || getProperties().getContentEncoding() != null) {
+            return null;
+        }
+        String ifRange = ifRangeValidator(getProperties());
+        if (ifRange == null) {
+            return null;
+        }
+
+        long contentLength;
+        try {
+            contentLength = Long.parseLong(String.valueOf(response.getFirstHeader("Content-Length")).trim());
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+        int rangeCount = (int) Math.min(maxRanges, contentLength / MIN_PARALLEL_RANGE_SIZE);
+        if (rangeCount < 2) {
+            return null;
+        }
+
+        // The final URI, so that range requests do not follow redirects.
+        URI uri = response.getUri() == null ? externalUri : response.getUri();
+        return new ParallelRangeFetch(getTransport(), uri, ifRange, contentLength, rangeCount, response.getBody(),
+            WebCacheExecutors.getDefaultExecutor());
+    }
+
+    // If-Range requires a strong validator.
+    private static String ifRangeValidator(CacheProperties properties) {
+        String etag = properties.getEtag();
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return properties.getLastModified();
+    }
+
+    // Content-Range: bytes 1000-4999/5000
+    private static long contentRangeStart(String contentRange) {
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return -1;
+        }
+        int dashIndex = contentRange.indexOf('-');
+        if (dashIndex == -1) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring("bytes ".length(), dashIndex).trim());
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     private void updateProperties(String headerName, String headerValue) {
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executor used for asynchronous fetches, such as
+ * {@link ExternalDataResource#openInputStreamAsync()}.
+ */
+public final class WebCacheExecutors {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebCacheExecutors.class);
+
+    private static volatile Executor defaultExecutor;
+
+    public static Executor getDefaultExecutor() {
+        Executor executor = defaultExecutor;
+        if (executor == null) {
+            synchronized (WebCacheExecutors.class) {
+                executor = defaultExecutor;
+                if (executor == null) {
+                    executor = createDefaultExecutor();
+                    defaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    public static void setDefaultExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        defaultExecutor = executor;
+    }
+
+    /**
+     * Fetches spend most of their time waiting for the network, so virtual
+     * threads are used when the runtime supports them (Java 21+). Otherwise an
+     * unbounded pool of daemon threads is used.
+     */
+    private static ExecutorService createDefaultExecutor() {
+        try {
+            // Reflection because the build targets Java 17.
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            LOGGER.debug("Using virtual threads for asynchronous fetches");
+            return executor;
+        }
+        catch (NoSuchMethodException e) {
+            LOGGER.debug("Virtual threads are not available, using platform threads for asynchronous fetches");
+        }
+        catch (IllegalAccessException | InvocationTargetException e) {
+            LOGGER.warn("Failed to create virtual thread executor, using platform threads for asynchronous fetches", e);
+        }
+
+        return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("webcache-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    private WebCacheExecutors() {
+    }
+
+}
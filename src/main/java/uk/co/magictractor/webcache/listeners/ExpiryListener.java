@@ -15,6 +15,7 @@
  */
 package uk.co.magictractor.webcache.listeners;
 
+import java.time.ZonedDateTime;
 import java.util.function.Function;
 
 import uk.co.magictractor.webcache.ExternalDataResource;
@@ -25,10 +26,16 @@ import uk.co.magictractor.webcache.ExternalDataResource;
 public class ExpiryListener extends AbstractExternalDataResourceListener {
 
     private final Function<ExternalDataResource, Boolean> expiryRule;
+    private final Function<ExternalDataResource, ZonedDateTime> expiryTime;
 
     /** Instances are usually created via static methods in ExpiryListeners. */
     public ExpiryListener(Function<ExternalDataResource, Boolean> expiryRule) {
+        this(expiryRule, data -> null);
+    }
+
+    public ExpiryListener(Function<ExternalDataResource, Boolean> expiryRule, Function<ExternalDataResource, ZonedDateTime> expiryTime) {
         this.expiryRule = expiryRule;
+        this.expiryTime = expiryTime;
     }
 
     @Override
@@ -36,4 +43,9 @@ public class ExpiryListener extends AbstractExternalDataResourceListener {
         return expiryRule.apply(dataResource);
     }
 
+    @Override
+    public ZonedDateTime getExpiry(ExternalDataResource dataResource) {
+        return expiryTime.apply(dataResource);
+    }
+
 }
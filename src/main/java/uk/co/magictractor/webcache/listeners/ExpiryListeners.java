@@ -15,17 +15,21 @@
  */
 package uk.co.magictractor.webcache.listeners;
 
+import java.time.DateTimeException;
 import java.time.DayOfWeek;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.time.temporal.ChronoField;
+import java.time.temporal.ChronoUnit;
 import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.co.magictractor.webcache.CacheProperties;
 import uk.co.magictractor.webcache.ExternalDataResource;
 
 /**
@@ -53,32 +57,127 @@ public final class ExpiryListeners {
         return new ExpiryListener(data -> always(data));
     }
 
+    /**
+     * <p>
+     * Expiry determined by HTTP response headers (Cache-Control max-age and
+     * s-maxage, Expires, Age and Date), as recorded when the resource was last
+     * fetched.
+     * </p>
+     * <p>
+     * Returns null if the server did not provide explicit freshness
+     * information, so this should be followed by another expiry listener.
+     * </p>
+     */
+    public static ExpiryListener httpCacheHeaders() {
+        return new ExpiryListener(data -> isAfterFreshUntil(data), data -> data.getProperties().getFreshUntil());
+    }
+
+    /**
+     * <p>
+     * Heuristic freshness for responses with a Last-Modified header but no
+     * explicit freshness information, as described in RFC 9111 section
+     * 4.2.2. The resource is considered fresh for 10% of the time between the
+     * last modification and the Date of the response, up to the given
+     * maximum.
+     * </p>
+     * <p>
+     * Returns null if the server provided explicit freshness information or
+     * no Last-Modified header, so this should be preceded by
+     * {@link #httpCacheHeaders()} and followed by another expiry listener.
+     * </p>
+     */
+    public static ExpiryListener heuristic(Duration maximum) {
+        return heuristic(0.1, maximum);
+    }
+
+    public static ExpiryListener heuristic(double fraction, Duration maximum) {
+        if (fraction <= 0 || fraction > 1) {
+            throw new IllegalArgumentException("Fraction must be greater than 0 and no more than 1");
+        }
+        if (maximum.isNegative() || maximum.isZero()) {
+            throw new IllegalArgumentException("Maximum must be positive");
+        }
+        return new ExpiryListener(data -> isAfterHeuristicExpiry(data, fraction, maximum), data -> heuristicExpiry(data, fraction, maximum));
+    }
+
+    /**
+     * The end of heuristic freshness, counted from the timestamp. The lifetime
+     * is measured from Last-Modified to Date, both from the server's clock, so
+     * is not affected by clock skew. The timestamp is used if there was no
+     * Date header.
+     */
+    public static ZonedDateTime heuristicExpiry(ZonedDateTime timestamp, ZonedDateTime date, ZonedDateTime lastModified, double fraction,
+            Duration maximum) {
+        Duration sinceModified = Duration.between(lastModified, date == null ? timestamp : date);
+        if (sinceModified.isNegative()) {
+            // Clock skew, the modification appears to be in the future.
+            return timestamp;
+        }
+        Duration lifetime = Duration.ofMillis((long) (sinceModified.toMillis() * fraction));
+        if (lifetime.compareTo(maximum) > 0) {
+            lifetime = maximum;
+        }
+        return timestamp.plus(lifetime);
+    }
+
+    /**
+     * <p>
+     * Revalidation interval learned from earlier revalidations, for use with
+     * websites that support 304 responses. The interval starts at the minimum
+     * and doubles for each consecutive 304 response, up to the maximum.
+     * </p>
+     * <p>
+     * After new content the interval is shortened, but resources which have
+     * usually been unchanged in the past restart from a multiple of the
+     * minimum, given by the number of 304 responses per change.
+     * </p>
+     */
+    public static ExpiryListener adaptive(Duration minimum, Duration maximum) {
+        if (minimum.isNegative() || minimum.isZero()) {
+            throw new IllegalArgumentException("Minimum must be positive");
+        }
+        if (maximum.compareTo(minimum) < 0) {
+            throw new IllegalArgumentException("Maximum must not be less than the minimum");
+        }
+        return new ExpiryListener(data -> isAfterAdaptiveExpiry(data, minimum, maximum), data -> adaptiveExpiry(data, minimum, maximum));
+    }
+
+    public static Duration adaptiveInterval(int modifiedCount, int notModifiedCount, int notModifiedStreak, Duration minimum, Duration maximum) {
+        // Before the current streak, to avoid counting it twice.
+        int earlierNotModifiedCount = Math.max(0, notModifiedCount - notModifiedStreak);
+        double notModifiedPerChange = modifiedCount == 0 ? 0 : (double) earlierNotModifiedCount / modifiedCount;
+        // Doubles to avoid overflow, values beyond the maximum are capped.
+        double millis = minimum.toMillis() * (1 + notModifiedPerChange) * Math.pow(2, notModifiedStreak);
+
+        return millis < maximum.toMillis() ? Duration.ofMillis((long) millis) : maximum;
+    }
+
     public static ExpiryListener onHours(int... hourOfDay) {
-        return new ExpiryListener(data -> isAfterExpiryDateTime(data, lastFetched -> nextHourFrom(lastFetched, hourOfDay)));
+        return expiryDateTime(lastFetched -> nextHourFrom(lastFetched, hourOfDay));
     }
 
     public static ExpiryListener daily() {
-        return new ExpiryListener(data -> isAfterExpiryDateTime(data, lastFetched -> daily(lastFetched, 0, 0)));
+        return expiryDateTime(lastFetched -> daily(lastFetched, 0, 0));
     }
 
     public static ExpiryListener daily(int hour) {
-        return new ExpiryListener(data -> isAfterExpiryDateTime(data, lastFetched -> daily(lastFetched, hour, 0)));
+        return expiryDateTime(lastFetched -> daily(lastFetched, hour, 0));
     }
 
     public static ExpiryListener daily(int hour, int minute) {
-        return new ExpiryListener(data -> isAfterExpiryDateTime(data, lastFetched -> daily(lastFetched, hour, minute)));
+        return expiryDateTime(lastFetched -> daily(lastFetched, hour, minute));
     }
 
     public static ExpiryListener dayOfWeek(DayOfWeek dayOfWeek) {
-        return new ExpiryListener(data -> isAfterExpiryDateTime(data, lastFetched -> nextDayOfWeek(lastFetched, dayOfWeek, 0, 0)));
+        return expiryDateTime(lastFetched -> nextDayOfWeek(lastFetched, dayOfWeek, 0, 0));
     }
 
     public static ExpiryListener dayOfWeek(DayOfWeek dayOfWeek, int hour) {
-        return new ExpiryListener(data -> isAfterExpiryDateTime(data, lastFetched -> nextDayOfWeek(lastFetched, dayOfWeek, hour, 0)));
+        return expiryDateTime(lastFetched -> nextDayOfWeek(lastFetched, dayOfWeek, hour, 0));
     }
 
     public static ExpiryListener dayOfWeek(DayOfWeek dayOfWeek, int hour, int minute) {
-        return new ExpiryListener(data -> isAfterExpiryDateTime(data, lastFetched -> nextDayOfWeek(lastFetched, dayOfWeek, hour, minute)));
+        return expiryDateTime(lastFetched -> nextDayOfWeek(lastFetched, dayOfWeek, hour, minute));
     }
 
     /**
@@ -90,7 +189,7 @@ public final class ExpiryListeners {
         if (days <= 0) {
             throw new IllegalArgumentException();
         }
-        return new ExpiryListener(data -> isAfterExpiryDateTime(data, lastFetched -> plusWait(lastFetched, days, 0, 0)));
+        return expiryDateTime(lastFetched -> plusWait(lastFetched, days, 0, 0));
     }
 
     /**
@@ -107,7 +206,7 @@ public final class ExpiryListeners {
         if (hours <= 0) {
             throw new IllegalArgumentException();
         }
-        return new ExpiryListener(data -> isAfterExpiryDateTime(data, lastFetched -> plusWait(lastFetched, 0, hours, 0)));
+        return expiryDateTime(lastFetched -> plusWait(lastFetched, 0, hours, 0));
     }
 
     /**
@@ -124,7 +223,7 @@ public final class ExpiryListeners {
         if (minutes <= 10) {
             throw new IllegalArgumentException("Minimum wait is 10 minutes");
         }
-        return new ExpiryListener(data -> isAfterExpiryDateTime(data, lastFetched -> plusWait(lastFetched, 0, 0, minutes)));
+        return expiryDateTime(lastFetched -> plusWait(lastFetched, 0, 0, minutes));
     }
 
     public static LocalDateTime plusWait(LocalDateTime lastTimestamp, int days, int hours, int minutes) {
@@ -224,6 +323,10 @@ public final class ExpiryListeners {
         return next;
     }
 
+    private static ExpiryListener expiryDateTime(Function<LocalDateTime, LocalDateTime> expiryRule) {
+        return new ExpiryListener(data -> isAfterExpiryDateTime(data, expiryRule), data -> expiryDateTime(data, expiryRule));
+    }
+
     private static Boolean always(ExternalDataResource dataResource) {
         Logger logger = LoggerFactory.getLogger(dataResource.getClass());
         logger.info("Expiry forced for {}", dataResource.name());
@@ -232,7 +335,7 @@ public final class ExpiryListeners {
     }
 
     private static Boolean isAfterExpiryDateTime(ExternalDataResource dataResource, Function<LocalDateTime, LocalDateTime> expiryRule) {
-        LocalDateTime lastFetched = dataResource.getProperties().getTimestamp().toLocalDateTime();
+        LocalDateTime lastFetched = lastFetched(dataResource);
 
         if (lastFetched == null) {
             // This shouldn't happen. For a new data resource a fetch should already have been triggered because there's no local cache.
@@ -260,6 +363,98 @@ public final class ExpiryListeners {
         return expired;
     }
 
+    private static ZonedDateTime expiryDateTime(ExternalDataResource dataResource, Function<LocalDateTime, LocalDateTime> expiryRule) {
+        ZonedDateTime timestamp = timestamp(dataResource);
+        return timestamp == null ? null : expiryRule.apply(timestamp.toLocalDateTime()).atZone(timestamp.getZone());
+    }
+
+    private static LocalDateTime lastFetched(ExternalDataResource dataResource) {
+        ZonedDateTime timestamp = timestamp(dataResource);
+        return timestamp == null ? null : timestamp.toLocalDateTime();
+    }
+
+    // Whole seconds, the same as timestamps read from properties, for in-memory properties after a fetch.
+    private static ZonedDateTime timestamp(ExternalDataResource dataResource) {
+        ZonedDateTime timestamp = dataResource.getProperties().getTimestamp();
+        return timestamp == null ? null : timestamp.truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    private static Boolean isAfterFreshUntil(ExternalDataResource dataResource) {
+        ZonedDateTime freshUntil = dataResource.getProperties().getFreshUntil();
+        if (freshUntil == null) {
+            return null;
+        }
+
+        return isAfter(dataResource, freshUntil, "HTTP cache expiry");
+    }
+
+    private static Boolean isAfterHeuristicExpiry(ExternalDataResource dataResource, double fraction, Duration maximum) {
+        ZonedDateTime expiry = heuristicExpiry(dataResource, fraction, maximum);
+        if (expiry == null) {
+            return null;
+        }
+
+        return isAfter(dataResource, expiry, "Heuristic expiry");
+    }
+
+    private static ZonedDateTime heuristicExpiry(ExternalDataResource dataResource, double fraction, Duration maximum) {
+        CacheProperties properties = dataResource.getProperties();
+        if (properties.getFreshUntil() != null || properties.getTimestamp() == null || properties.getLastModified() == null) {
+            return null;
+        }
+
+        ZonedDateTime lastModified;
+        try {
+            lastModified = DateTimeFormatter.RFC_1123_DATE_TIME.parse(properties.getLastModified().trim(), ZonedDateTime::from);
+        }
+        catch (DateTimeException e) {
+            return null;
+        }
+
+        return heuristicExpiry(properties.getTimestamp(), properties.getDate(), lastModified, fraction, maximum);
+    }
+
+    private static Boolean isAfterAdaptiveExpiry(ExternalDataResource dataResource, Duration minimum, Duration maximum) {
+        ZonedDateTime expiry = adaptiveExpiry(dataResource, minimum, maximum);
+        if (expiry == null) {
+            // As for isAfterExpiryDateTime(), a fetch should already have been triggered.
+            LoggerFactory.getLogger(dataResource.getClass()).warn("Missing timestamp for {}, so assuming expiry", dataResource.name());
+            return true;
+        }
+
+        return isAfter(dataResource, expiry, "Adaptive expiry");
+    }
+
+    private static ZonedDateTime adaptiveExpiry(ExternalDataResource dataResource, Duration minimum, Duration maximum) {
+        CacheProperties properties = dataResource.getProperties();
+        if (properties.getTimestamp() == null) {
+            return null;
+        }
+
+        Duration interval = adaptiveInterval(properties.getModifiedCount(), properties.getNotModifiedCount(), properties.getNotModifiedStreak(), minimum,
+            maximum);
+        return properties.getTimestamp().plus(interval);
+    }
+
+    private static Boolean isAfter(ExternalDataResource dataResource, ZonedDateTime freshUntil, String description) {
+        ZonedDateTime now = ZonedDateTime.now();
+        boolean expired = !now.isBefore(freshUntil);
+
+        Logger logger = LoggerFactory.getLogger(dataResource.getClass());
+        if (logger.isInfoEnabled()) {
+            String formattedExpiryDateTime = DATE_FORMATTER.format(freshUntil.withZoneSameInstant(now.getZone()));
+            if (expired) {
+                logger.info("{} {} has passed for {}", description, formattedExpiryDateTime, dataResource.name());
+            }
+            else {
+                Duration remaining = Duration.between(now, freshUntil);
+                logger.info("{} {} (in {}) has not passed for {}", description, formattedExpiryDateTime, durationDescription(remaining), dataResource.name());
+            }
+        }
+
+        return expired;
+    }
+
     public static String durationDescription(Duration duration) {
         int seconds = (int) duration.getSeconds();
         if (seconds == 1) {
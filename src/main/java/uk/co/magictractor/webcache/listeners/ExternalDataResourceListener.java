@@ -15,6 +15,8 @@
  */
 package uk.co.magictractor.webcache.listeners;
 
+import java.time.ZonedDateTime;
+
 import uk.co.magictractor.webcache.ExternalDataResource;
 
 /**
@@ -32,4 +34,14 @@ public interface ExternalDataResourceListener {
      */
     Boolean isExpired(ExternalDataResource dataResource);
 
+    /**
+     * The first listener to return a non-null value determines when the data
+     * resource will expire. Used to refresh resources before they expire, see
+     * {@link uk.co.magictractor.webcache.RefreshScheduler}. Returns null by
+     * default, meaning that the expiry is not known by this listener.
+     */
+    default ZonedDateTime getExpiry(ExternalDataResource dataResource) {
+        return null;
+    }
+
 }
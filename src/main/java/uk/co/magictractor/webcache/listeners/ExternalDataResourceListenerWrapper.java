@@ -15,6 +15,8 @@
  */
 package uk.co.magictractor.webcache.listeners;
 
+import java.time.ZonedDateTime;
+
 import uk.co.magictractor.webcache.ExternalDataResource;
 
 /**
@@ -50,6 +52,11 @@ public class ExternalDataResourceListenerWrapper implements ExternalDataResource
         return implementation.isExpired(dataResource);
     }
 
+    @Override
+    public ZonedDateTime getExpiry(ExternalDataResource dataResource) {
+        return implementation.getExpiry(dataResource);
+    }
+
     // ah... need to do something for the logger class too...
 
 }
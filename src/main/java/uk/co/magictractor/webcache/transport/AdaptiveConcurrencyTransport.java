@@ -0,0 +1,223 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache.transport;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.base.MoreObjects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of concurrent requests to each host, adjusting the limit
+ * for each host from the latency and errors of its responses rather than
+ * needing it to be tuned by hand. The limit grows additively while latency
+ * stays close to the lowest latency seen for the host, and shrinks
+ * multiplicatively when latency rises or requests fail (an
+ * {@code IOException}, 429 or 5xx response).
+ * <p>
+ * A request occupies a slot from sending until its response is closed, so
+ * reading the body counts towards the limit. Latency is measured to the
+ * response headers. Used in addition to fixed limits, such as those of
+ * {@code WebCache.prefetchAll()}, typically innermost so that retries are also
+ * limited:
+ *
+ * <pre>
+ * new RetryingTransport(new CircuitBreakingTransport(new AdaptiveConcurrencyTransport(new HttpClientTransport())))
+ * </pre>
+ */
+public class AdaptiveConcurrencyTransport implements HttpTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveConcurrencyTransport.class);
+
+    private static final int DEFAULT_INITIAL_LIMIT = 4;
+    private static final int DEFAULT_MAX_LIMIT = 64;
+
+    // Latency up to this multiple of the lowest latency seen is treated as an unloaded host.
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double LATENCY_BACK_OFF = 0.9;
+    private static final double ERROR_BACK_OFF = 0.5;
+
+    private final HttpTransport transport;
+    private final int initialLimit;
+    private final int maxLimit;
+    private final Map<String, HostLimit> hostLimits = new ConcurrentHashMap<>();
+
+    public AdaptiveConcurrencyTransport(HttpTransport transport) {
+        this(transport, DEFAULT_INITIAL_LIMIT, DEFAULT_MAX_LIMIT);
+    }
+
+    public AdaptiveConcurrencyTransport(HttpTransport transport, int initialLimit, int maxLimit) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport must not be null");
+        }
+        if (initialLimit < 1 || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("initialLimit must be at least 1, and maxLimit must not be less than initialLimit");
+        }
+        this.transport = transport;
+        this.initialLimit = initialLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    @Override
+    public TransportResponse send(TransportRequest request) throws IOException {
+        HostLimit hostLimit = hostLimits.computeIfAbsent(hostKey(request.getUri()), HostLimit::new);
+        hostLimit.acquire();
+
+        TransportResponse response;
+        long startNanos = System.nanoTime();
+        try {
+            response = transport.send(request);
+        }
+        catch (IOException | RuntimeException e) {
+            hostLimit.failed();
+            hostLimit.release();
+            throw e;
+        }
+
+        int statusCode = response.getStatusCode();
+        if (statusCode == 429 || statusCode >= 500) {
+            hostLimit.failed();
+        }
+        else {
+            hostLimit.succeeded(System.nanoTime() - startNanos);
+        }
+
+        return response.withBody(new ReleasingInputStream(response.getBody(), hostLimit));
+    }
+
+    /** The current limit for the host of the URI. */
+    public int getLimit(URI uri) {
+        HostLimit hostLimit = hostLimits.get(hostKey(uri));
+        return hostLimit == null ? initialLimit : hostLimit.getLimit();
+    }
+
+    private static String hostKey(URI uri) {
+        return uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("transport", transport)
+                .add("initialLimit", initialLimit)
+                .add("maxLimit", maxLimit)
+                .toString();
+    }
+
+    private final class HostLimit {
+
+        private final String host;
+        private double limit = initialLimit;
+        private int inFlight;
+        private long baselineNanos = Long.MAX_VALUE;
+
+        private HostLimit(String host) {
+            this.host = host;
+        }
+
+        synchronized int getLimit() {
+            return (int) limit;
+        }
+
+        synchronized void acquire() throws InterruptedIOException {
+            try {
+                while (inFlight >= (int) limit) {
+                    wait();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to send request to " + host);
+            }
+            inFlight++;
+        }
+
+        synchronized void release() {
+            inFlight--;
+            notifyAll();
+        }
+
+        synchronized void succeeded(long latencyNanos) {
+            // Drifts up slowly, so that the baseline follows a host which becomes slower for good.
+            baselineNanos = Math.min(latencyNanos, baselineNanos + baselineNanos / 100);
+            if (latencyNanos > baselineNanos * LATENCY_TOLERANCE) {
+                decrease(LATENCY_BACK_OFF);
+            }
+            else if (inFlight >= limit / 2) {
+                // Roughly one more for each limit's worth of requests, and only while the limit is being used.
+                setLimit(Math.min(maxLimit, limit + 1 / limit));
+            }
+        }
+
+        synchronized void failed() {
+            decrease(ERROR_BACK_OFF);
+        }
+
+        private void decrease(double backOff) {
+            double newLimit = Math.max(1, limit * backOff);
+            if ((int) newLimit < (int) limit) {
+                LOGGER.debug("Reduced concurrency limit for {} to {}", host, (int) newLimit);
+            }
+            setLimit(newLimit);
+        }
+
+        private void setLimit(double newLimit) {
+            limit = newLimit;
+            notifyAll();
+        }
+
+    }
+
+    private static final class ReleasingInputStream extends FilterInputStream {
+
+        private final HostLimit hostLimit;
+        private final AtomicBoolean isReleased = new AtomicBoolean();
+
+        private ReleasingInputStream(InputStream in, HostLimit hostLimit) {
+            super(in);
+            this.hostLimit = hostLimit;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return in.read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            }
+            finally {
+                if (isReleased.compareAndSet(false, true)) {
+                    hostLimit.release();
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache.transport;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.base.MoreObjects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fails fast for hosts which are down. After a number of consecutive failures
+ * (an {@code IOException} or a 5xx response) for a host, the circuit breaker
+ * for that host opens and requests throw {@link CircuitOpenException} without
+ * connecting. Once the open duration has passed a single trial request is
+ * sent, which closes the circuit breaker if it succeeds and opens it again if
+ * it fails.
+ * <p>
+ * Resources with stale-if-error use their local copy when the circuit
+ * breaker is open, like for any other failure.
+ */
+public class CircuitBreakingTransport implements HttpTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreakingTransport.class);
+
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+
+    private final HttpTransport transport;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    public CircuitBreakingTransport(HttpTransport transport) {
+        this(transport, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION);
+    }
+
+    /**
+     * @param failureThreshold consecutive failures for a host which open its
+     *        circuit breaker
+     * @param openDuration how long to fail fast before sending a trial request
+     */
+    public CircuitBreakingTransport(HttpTransport transport, int failureThreshold, Duration openDuration) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport must not be null");
+        }
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be at least 1");
+        }
+        if (openDuration == null || openDuration.isNegative()) {
+            throw new IllegalArgumentException("openDuration must not be negative");
+        }
+        this.transport = transport;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    @Override
+    public TransportResponse send(TransportRequest request) throws IOException {
+        URI uri = request.getUri();
+        CircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(hostKey(uri), key -> new CircuitBreaker());
+        circuitBreaker.beforeRequest(uri);
+
+        TransportResponse response;
+        try {
+            response = transport.send(request);
+        }
+        catch (IOException | RuntimeException e) {
+            failed(circuitBreaker, uri);
+            throw e;
+        }
+
+        if (response.getStatusCode() >= 500) {
+            failed(circuitBreaker, uri);
+        }
+        else {
+            circuitBreaker.succeeded();
+        }
+        return response;
+    }
+
+    /** True if requests for the host of the URI currently fail fast. */
+    public boolean isOpen(URI uri) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(hostKey(uri));
+        return circuitBreaker != null && circuitBreaker.isOpen();
+    }
+
+    private void failed(CircuitBreaker circuitBreaker, URI uri) {
+        Instant openUntil = circuitBreaker.failed(failureThreshold, openDuration);
+        if (openUntil != null) {
+            LOGGER.warn("Circuit breaker opened for {} until {}", uri.getHost(), openUntil);
+        }
+    }
+
+    private static String hostKey(URI uri) {
+        return uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("transport", transport)
+                .add("failureThreshold", failureThreshold)
+                .add("openDuration", openDuration)
+                .toString();
+    }
+
+    private static final class CircuitBreaker {
+
+        private int consecutiveFailures;
+        // Null while closed.
+        private Instant openUntil;
+        private boolean isTrialInProgress;
+
+        synchronized void beforeRequest(URI uri) throws CircuitOpenException {
+            if (openUntil == null) {
+                return;
+            }
+            if (Instant.now().isBefore(openUntil)) {
+                throw new CircuitOpenException(uri, "Circuit breaker open until " + openUntil);
+            }
+            // Half open, other requests fail fast until the trial request completes.
+            if (isTrialInProgress) {
+                throw new CircuitOpenException(uri, "Circuit breaker half open, waiting for trial request");
+            }
+            isTrialInProgress = true;
+        }
+
+        synchronized boolean isOpen() {
+            return openUntil != null && (isTrialInProgress || Instant.now().isBefore(openUntil));
+        }
+
+        synchronized void succeeded() {
+            consecutiveFailures = 0;
+            openUntil = null;
+            isTrialInProgress = false;
+        }
+
+        /** Returns the time until which the breaker is open, if it has just opened. */
+        synchronized Instant failed(int failureThreshold, Duration openDuration) {
+            consecutiveFailures++;
+            boolean wasTrial = isTrialInProgress;
+            isTrialInProgress = false;
+            if (wasTrial || (openUntil == null && consecutiveFailures >= failureThreshold)) {
+                openUntil = Instant.now().plus(openDuration);
+                return openUntil;
+            }
+            return null;
+        }
+
+    }
+
+}
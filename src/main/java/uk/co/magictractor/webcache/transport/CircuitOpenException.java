@@ -0,0 +1,33 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache.transport;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Thrown without sending a request while the circuit breaker for a host is
+ * open, see {@link CircuitBreakingTransport}.
+ */
+public class CircuitOpenException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(URI uri, String message) {
+        super(message + ", not sending request for " + uri);
+    }
+
+}
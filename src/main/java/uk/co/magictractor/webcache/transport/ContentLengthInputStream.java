@@ -0,0 +1,81 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache.transport;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fails if the body ends before Content-Length bytes have been read.
+ * {@code HttpURLConnection} quietly returns end of stream if the server drops
+ * the connection part way through a body, which would otherwise be saved as
+ * if complete.
+ */
+final class ContentLengthInputStream extends FilterInputStream {
+
+    private final long contentLength;
+    private long count;
+
+    ContentLengthInputStream(InputStream in, long contentLength) {
+        super(in);
+        this.contentLength = contentLength;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b == -1) {
+            checkComplete();
+        }
+        else {
+            count++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int n = super.read(buffer, offset, length);
+        if (n == -1) {
+            checkComplete();
+        }
+        else {
+            count += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void checkComplete() throws IOException {
+        if (count < contentLength) {
+            throw new EOFException("Body ended after " + count + " of " + contentLength + " bytes");
+        }
+    }
+
+}
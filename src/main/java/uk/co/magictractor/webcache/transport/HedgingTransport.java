@@ -0,0 +1,311 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.MoreObjects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.magictractor.webcache.WebCacheExecutors;
+
+/**
+ * Hedges against stuck connections. If a request has no response headers
+ * within a percentile of recent latencies for its host, a second request is
+ * sent and whichever responds first is used. The other request is cancelled,
+ * by interrupting it, and its response is closed if it arrives anyway.
+ * <p>
+ * Requests are GETs, so sending twice is safe. Hedging starts once enough
+ * latencies have been recorded for a host, and at most one extra request is
+ * sent for each request. When a request is hedged, the time the first request
+ * had been waiting is recorded even if it loses, so that slow hosts do not
+ * appear faster than they are.
+ */
+public class HedgingTransport implements HttpTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HedgingTransport.class);
+
+    private static final double DEFAULT_PERCENTILE = 0.95;
+    private static final Duration DEFAULT_MIN_DELAY = Duration.ofMillis(50);
+
+    // Recent latencies for each host, enough for a stable 95th percentile.
+    private static final int LATENCY_WINDOW = 100;
+    private static final int MIN_LATENCIES = 20;
+
+    private final HttpTransport transport;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final Executor executor;
+    private final Map<String, Latencies> hostLatencies = new ConcurrentHashMap<>();
+
+    public HedgingTransport(HttpTransport transport) {
+        this(transport, DEFAULT_PERCENTILE, DEFAULT_MIN_DELAY, WebCacheExecutors.getDefaultExecutor());
+    }
+
+    /**
+     * @param percentile the percentile of recent latencies to wait for before
+     *        hedging, like 0.95
+     * @param minDelay the minimum wait before hedging, so that very fast hosts
+     *        are not sent many extra requests
+     * @param executor runs requests, one or two for each call to
+     *        {@link #send(TransportRequest)}, so should not be bounded
+     */
+    public HedgingTransport(HttpTransport transport, double percentile, Duration minDelay, Executor executor) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport must not be null");
+        }
+        if (!(percentile > 0 && percentile < 1)) {
+            throw new IllegalArgumentException("percentile must be between 0 and 1");
+        }
+        if (minDelay == null || minDelay.isNegative()) {
+            throw new IllegalArgumentException("minDelay must not be negative");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        this.transport = transport;
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.executor = executor;
+    }
+
+    @Override
+    public TransportResponse send(TransportRequest request) throws IOException {
+        Latencies latencies = latencies(request.getUri());
+        long percentileNanos = latencies.percentile(percentile);
+        // Negative if there are not yet enough samples to hedge.
+        long hedgeDelayNanos = percentileNanos < 0 ? -1 : Math.max(percentileNanos, minDelayNanos);
+
+        BlockingQueue<Attempt> completed = new LinkedBlockingQueue<>();
+        Attempt first = new Attempt(request, completed, latencies);
+        Attempt second = null;
+        executor.execute(first);
+
+        try {
+            Attempt winner = hedgeDelayNanos < 0 ? completed.take() : completed.poll(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+            if (winner == null) {
+                LOGGER.debug("No response after {}ms, hedging request for {}", TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos), request.getUri());
+                second = new Attempt(request, completed, latencies);
+                executor.execute(second);
+                winner = completed.take();
+                if (winner.failure != null) {
+                    // Use the other request, which may yet succeed.
+                    Attempt other = completed.take();
+                    if (other.failure != null) {
+                        other.failure.addSuppressed(winner.failure);
+                    }
+                    winner = other;
+                }
+            }
+
+            if (winner.failure != null) {
+                throw winner.failure;
+            }
+            winner.isTaken = true;
+            return winner.response;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for response from " + request.getUri());
+        }
+        finally {
+            // Cancels the losing request, if any, or both if interrupted.
+            first.abandonUnlessWinner(second != null);
+            if (second != null) {
+                second.abandonUnlessWinner(false);
+            }
+        }
+    }
+
+    private Latencies latencies(URI uri) {
+        String hostKey = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+        return hostLatencies.computeIfAbsent(hostKey, k -> new Latencies());
+    }
+
+    /** Visible for testing. Negative if there are too few latencies to hedge. */
+    long percentileNanos(URI uri) {
+        return latencies(uri).percentile(percentile);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("transport", transport)
+                .add("percentile", percentile)
+                .toString();
+    }
+
+    private final class Attempt implements Runnable {
+
+        private final TransportRequest request;
+        private final BlockingQueue<Attempt> completed;
+        private final Latencies latencies;
+        private final long startNanos = System.nanoTime();
+
+        // Guarded by this.
+        private Thread thread;
+        private boolean isDone;
+        private boolean isAbandoned;
+        private boolean isRecorded;
+        private TransportResponse response;
+        private IOException failure;
+        // Only used by the thread calling send().
+        private boolean isTaken;
+
+        private Attempt(TransportRequest request, BlockingQueue<Attempt> completed, Latencies latencies) {
+            this.request = request;
+            this.completed = completed;
+            this.latencies = latencies;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (isAbandoned) {
+                    return;
+                }
+                thread = Thread.currentThread();
+            }
+
+            TransportResponse attemptResponse = null;
+            IOException attemptFailure = null;
+            try {
+                attemptResponse = transport.send(request);
+            }
+            catch (IOException e) {
+                attemptFailure = e;
+            }
+            catch (RuntimeException e) {
+                attemptFailure = new IOException("Failed to send request for " + request.getUri(), e);
+            }
+
+            long latencyNanos = System.nanoTime() - startNanos;
+
+            boolean isClose;
+            boolean isRecord;
+            synchronized (this) {
+                thread = null;
+                // Clear any interrupt from abandon(), so it does not leak to the executor's next task.
+                Thread.interrupted();
+                isDone = true;
+                isClose = isAbandoned;
+                if (!isClose) {
+                    response = attemptResponse;
+                    failure = attemptFailure;
+                }
+                // Including losers which respond despite being abandoned.
+                isRecord = attemptResponse != null && !isRecorded;
+                isRecorded = true;
+            }
+
+            if (isRecord) {
+                latencies.add(latencyNanos);
+            }
+
+            if (isClose) {
+                closeQuietly(attemptResponse);
+                return;
+            }
+            completed.add(this);
+        }
+
+        /**
+         * The winner's response is returned, so the winner is marked as taken by
+         * send().
+         *
+         * @param isOutrun true for the first attempt if it was hedged, so its
+         *        elapsed time is recorded if it has not responded
+         */
+        void abandonUnlessWinner(boolean isOutrun) {
+            if (isTaken) {
+                return;
+            }
+            TransportResponse toClose = null;
+            boolean isRecord = false;
+            synchronized (this) {
+                isAbandoned = true;
+                if (thread != null) {
+                    thread.interrupt();
+                }
+                else if (isDone) {
+                    toClose = response;
+                }
+                if (!isDone && isOutrun) {
+                    // The latency is at least the time so far, which is at least the hedge delay.
+                    isRecord = true;
+                    isRecorded = true;
+                }
+            }
+            if (isRecord) {
+                latencies.add(System.nanoTime() - startNanos);
+            }
+            closeQuietly(toClose);
+        }
+
+        private void closeQuietly(TransportResponse responseToClose) {
+            if (responseToClose == null) {
+                return;
+            }
+            try {
+                responseToClose.close();
+            }
+            catch (IOException e) {
+                LOGGER.debug("Failed to close hedged response for {}", request.getUri(), e);
+            }
+        }
+
+    }
+
+    private static final class Latencies {
+
+        private final long[] window = new long[LATENCY_WINDOW];
+        private int count;
+        private int next;
+
+        synchronized void add(long latencyNanos) {
+            window[next] = latencyNanos;
+            next = (next + 1) % window.length;
+            if (count < window.length) {
+                count++;
+            }
+        }
+
+        /** Negative if there are too few latencies to hedge. */
+        synchronized long percentile(double percentile) {
+            if (count < MIN_LATENCIES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(window, count);
+            Arrays.sort(sorted);
+            return sorted[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+        }
+
+    }
+
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Transport using {@code java.net.http.HttpClient}. The client pools
+ * keep-alive connections and multiplexes requests over HTTP/2 connections, so
+ * a single instance should be shared by many resources.
+ */
+public class HttpClientTransport implements HttpTransport {
+
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient httpClient;
+    private final Duration readTimeout;
+
+    public HttpClientTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    public HttpClientTransport(Duration connectTimeout, Duration readTimeout) {
+        this(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .build(), readTimeout);
+    }
+
+    /**
+     * @param httpClient a client, perhaps with a proxy or SSL context; it
+     *        should follow redirects
+     * @param readTimeout maximum time to wait for response headers after a
+     *        request has been sent
+     */
+    public HttpClientTransport(HttpClient httpClient, Duration readTimeout) {
+        if (httpClient == null) {
+            throw new IllegalArgumentException("httpClient must not be null");
+        }
+        if (readTimeout == null || readTimeout.isNegative() || readTimeout.isZero()) {
+            throw new IllegalArgumentException("readTimeout must be positive");
+        }
+        this.httpClient = httpClient;
+        this.readTimeout = readTimeout;
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    @Override
+    public TransportResponse send(TransportRequest request) throws IOException {
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(request.getUri())
+                .timeout(readTimeout)
+                .GET();
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            requestBuilder.header(header.getKey(), header.getValue());
+        }
+
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(requestBuilder.build(), BodyHandlers.ofInputStream());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + request.getUri());
+        }
+
+        // Similar to the status line seen with HttpURLConnection, but without the reason phrase
+        // which is not available (and does not exist at all for HTTP/2).
+        String statusLine = (response.version() == HttpClient.Version.HTTP_2 ? "HTTP/2 " : "HTTP/1.1 ") + response.statusCode();
+        Map<String, List<String>> headers = new LinkedHashMap<>(response.headers().map());
+
+        return new TransportResponse(response.uri(), statusLine, response.statusCode(), headers, response.body(), permanentRedirectUri(response));
+    }
+
+    private URI permanentRedirectUri(HttpResponse<InputStream> response) {
+        // Redirects which were followed, first response first.
+        List<HttpResponse<InputStream>> chain = new ArrayList<>();
+        for (HttpResponse<InputStream> r = response; r != null; r = r.previousResponse().orElse(null)) {
+            chain.add(0, r);
+        }
+
+        URI permanentRedirectUri = null;
+        for (int i = 0; i < chain.size() - 1 && TransportResponse.isPermanentRedirect(chain.get(i).statusCode()); i++) {
+            permanentRedirectUri = chain.get(i + 1).uri();
+        }
+        return permanentRedirectUri;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("httpClient", httpClient)
+                .add("readTimeout", readTimeout)
+                .toString();
+    }
+
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache.transport;
+
+import java.io.IOException;
+
+/**
+ * Sends HTTP requests on behalf of a {@code WebCache}. Implementations follow
+ * redirects and must not decode the body (so a compressed body is returned
+ * compressed).
+ */
+public interface HttpTransport {
+
+    /**
+     * Caller is responsible for closing the response, which releases the
+     * connection for reuse.
+     */
+    TransportResponse send(TransportRequest request) throws IOException;
+
+}
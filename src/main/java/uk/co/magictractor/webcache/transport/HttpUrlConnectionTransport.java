@@ -0,0 +1,165 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Transport using {@code HttpURLConnection}. The JDK keeps idle HTTP/1.1
+ * connections alive for reuse provided that response bodies are fully read or
+ * closed, but does not support HTTP/2.
+ * <p>
+ * Redirects are followed by this class rather than by
+ * {@code HttpURLConnection}, so that permanent redirects can be reported.
+ * As for {@code HttpClient}, redirects from https to http are not followed.
+ */
+public class HttpUrlConnectionTransport implements HttpTransport {
+
+    private static final int MAX_REDIRECTS = 10;
+
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    /** No timeouts, as for HttpURLConnection defaults. */
+    public HttpUrlConnectionTransport() {
+        this(Duration.ZERO, Duration.ZERO);
+    }
+
+    /** Zero durations mean no timeout. */
+    public HttpUrlConnectionTransport(Duration connectTimeout, Duration readTimeout) {
+        this.connectTimeoutMillis = (int) connectTimeout.toMillis();
+        this.readTimeoutMillis = (int) readTimeout.toMillis();
+    }
+
+    @Override
+    public TransportResponse send(TransportRequest request) throws IOException {
+        URI uri = request.getUri();
+        URI permanentRedirectUri = null;
+        boolean isPermanentSoFar = true;
+        HttpURLConnection httpConnection = openConnection(uri, request);
+        for (int redirectCount = 0; redirectCount < MAX_REDIRECTS; redirectCount++) {
+            URI location = redirectLocation(httpConnection, uri);
+            if (location == null) {
+                break;
+            }
+
+            isPermanentSoFar = isPermanentSoFar && TransportResponse.isPermanentRedirect(httpConnection.getResponseCode());
+            if (isPermanentSoFar) {
+                permanentRedirectUri = location;
+            }
+            // Release the connection for reuse.
+            httpConnection.getInputStream().close();
+
+            uri = location;
+            httpConnection = openConnection(uri, request);
+        }
+
+        return response(httpConnection, uri, permanentRedirectUri);
+    }
+
+    private HttpURLConnection openConnection(URI uri, TransportRequest request) throws IOException {
+        HttpURLConnection httpConnection = (HttpURLConnection) uri.toURL().openConnection();
+        httpConnection.setInstanceFollowRedirects(false);
+        httpConnection.setConnectTimeout(connectTimeoutMillis);
+        httpConnection.setReadTimeout(readTimeoutMillis);
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            httpConnection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        return httpConnection;
+    }
+
+    // Null if the response is not a redirect which should be followed.
+    private URI redirectLocation(HttpURLConnection httpConnection, URI uri) throws IOException {
+        int statusCode = httpConnection.getResponseCode();
+        if (statusCode != 301 && statusCode != 302 && statusCode != 303 && statusCode != 307 && statusCode != 308) {
+            return null;
+        }
+        String location = httpConnection.getHeaderField("Location");
+        if (location == null) {
+            return null;
+        }
+
+        URI locationUri;
+        try {
+            locationUri = uri.resolve(new URI(location));
+        }
+        catch (URISyntaxException e) {
+            throw new IOException("Invalid redirect location " + location + " from " + uri, e);
+        }
+        if ("https".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(locationUri.getScheme())) {
+            return null;
+        }
+        return locationUri;
+    }
+
+    private TransportResponse response(HttpURLConnection httpConnection, URI uri, URI permanentRedirectUri) throws IOException {
+        String statusLine = null;
+        // LinkedHashMap to preserve the order of the headers
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        int headerIndex = 0;
+        while (true) {
+            String headerValue = httpConnection.getHeaderField(headerIndex);
+            if (headerValue == null) {
+                break;
+            }
+            String headerName = httpConnection.getHeaderFieldKey(headerIndex);
+            if (headerName != null) {
+                headers.computeIfAbsent(headerName, k -> new ArrayList<>()).add(headerValue);
+            }
+            else {
+                if (headerIndex != 0) {
+                    // Should only be for the first line like
+                    // HTTP/1.1 200 OK
+                    throw new IllegalStateException();
+                }
+                statusLine = headerValue;
+            }
+
+            headerIndex++;
+        }
+
+        int statusCode = httpConnection.getResponseCode();
+        InputStream body = statusCode < 400 ? httpConnection.getInputStream() : httpConnection.getErrorStream();
+        if (body == null) {
+            body = InputStream.nullInputStream();
+        }
+        else if (httpConnection.getContentLengthLong() >= 0) {
+            body = new ContentLengthInputStream(body, httpConnection.getContentLengthLong());
+        }
+
+        return new TransportResponse(uri, statusLine, statusCode, headers, body, permanentRedirectUri);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("connectTimeoutMillis", connectTimeoutMillis)
+                .add("readTimeoutMillis", readTimeoutMillis)
+                .toString();
+    }
+
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.google.common.base.MoreObjects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retries requests which fail with an {@code IOException} or a 502, 503 or
+ * 504 response, waiting between attempts with exponential back-off and full
+ * jitter, so that many clients retrying together do not hit the origin in
+ * step. A Retry-After header on a 503 response is respected, up to the
+ * maximum back-off.
+ * <p>
+ * Only sending the request and receiving the response headers is retried,
+ * not reading the body. {@link CircuitOpenException}s are not retried, so
+ * wrap a {@link CircuitBreakingTransport} to stop retrying hosts which are
+ * down.
+ */
+public class RetryingTransport implements HttpTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetryingTransport.class);
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final Duration DEFAULT_INITIAL_BACK_OFF = Duration.ofMillis(200);
+    private static final Duration DEFAULT_MAX_BACK_OFF = Duration.ofSeconds(5);
+
+    private final HttpTransport transport;
+    private final int maxAttempts;
+    private final Duration initialBackOff;
+    private final Duration maxBackOff;
+
+    public RetryingTransport(HttpTransport transport) {
+        this(transport, DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACK_OFF, DEFAULT_MAX_BACK_OFF);
+    }
+
+    /**
+     * @param maxAttempts the maximum number of requests, including the first
+     * @param initialBackOff the maximum wait before the first retry, doubling
+     *        for each subsequent retry
+     * @param maxBackOff the maximum wait before any retry
+     */
+    public RetryingTransport(HttpTransport transport, int maxAttempts, Duration initialBackOff, Duration maxBackOff) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport must not be null");
+        }
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        if (initialBackOff == null || initialBackOff.isNegative() || maxBackOff == null || maxBackOff.compareTo(initialBackOff) < 0) {
+            throw new IllegalArgumentException("back-off must not be negative, and maxBackOff must not be less than initialBackOff");
+        }
+        this.transport = transport;
+        this.maxAttempts = maxAttempts;
+        this.initialBackOff = initialBackOff;
+        this.maxBackOff = maxBackOff;
+    }
+
+    @Override
+    public TransportResponse send(TransportRequest request) throws IOException {
+        for (int attempt = 1;; attempt++) {
+            TransportResponse response;
+            try {
+                response = transport.send(request);
+            }
+            catch (CircuitOpenException e) {
+                throw e;
+            }
+            catch (IOException e) {
+                if (attempt >= maxAttempts || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                Duration backOff = backOff(attempt);
+                LOGGER.debug("Attempt {} failed for {}, retrying in {}ms", attempt, request.getUri(), backOff.toMillis(), e);
+                sleep(backOff);
+                continue;
+            }
+
+            if (attempt >= maxAttempts || !isRetryable(response.getStatusCode())) {
+                return response;
+            }
+            Duration backOff = retryAfter(response);
+            if (backOff == null) {
+                backOff = backOff(attempt);
+            }
+            // Release the connection before waiting.
+            response.close();
+            LOGGER.debug("Attempt {} for {} returned {}, retrying in {}ms", attempt, request.getUri(), response.getStatusCode(),
+                backOff.toMillis());
+            sleep(backOff);
+        }
+    }
+
+    private boolean isRetryable(int statusCode) {
+        return statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    // Full jitter, a random wait up to the exponential back-off.
+    private Duration backOff(int attempt) {
+        // Shift capped to avoid overflow, maxBackOff is typically reached well before.
+        long maxNanos = initialBackOff.toNanos() << Math.min(attempt - 1, 20);
+        if (maxNanos < 0 || maxNanos > maxBackOff.toNanos()) {
+            maxNanos = maxBackOff.toNanos();
+        }
+        return Duration.ofNanos(maxNanos == 0 ? 0 : ThreadLocalRandom.current().nextLong(maxNanos));
+    }
+
+    // Only the delay-seconds form, an HTTP date falls back to the usual back-off.
+    private Duration retryAfter(TransportResponse response) {
+        String retryAfter = response.getFirstHeader("Retry-After");
+        if (retryAfter == null) {
+            return null;
+        }
+        try {
+            Duration duration = Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+            if (duration.isNegative()) {
+                return null;
+            }
+            return duration.compareTo(maxBackOff) < 0 ? duration : maxBackOff;
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void sleep(Duration duration) throws InterruptedIOException {
+        try {
+            Thread.sleep(duration.toMillis());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("transport", transport)
+                .add("maxAttempts", maxAttempts)
+                .add("initialBackOff", initialBackOff)
+                .add("maxBackOff", maxBackOff)
+                .toString();
+    }
+
+}
@@ -0,0 +1,372 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.base.MoreObjects;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <p>
+ * A stand-in for a web site, for tests and benchmarks without network access.
+ * Content is held in memory and keyed by path and query, so the same origin
+ * may stand in for any host. Conditional requests are answered with 304
+ * responses when the content is unchanged, and range requests with 206
+ * responses. Paths may also redirect, and redirects are followed when used as
+ * an in-memory transport.
+ * </p>
+ * <p>
+ * An origin may be used directly as an in-memory {@link HttpTransport}, or
+ * served over loopback using {@link #start()} so that the other transports
+ * can be compared.
+ * </p>
+ */
+public class StandInOrigin implements HttpTransport {
+
+    private static final DateTimeFormatter HTTP_DATE_FORMATTER = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+    private static final int MAX_REDIRECTS = 10;
+
+    private final Map<String, Content> contents = new ConcurrentHashMap<>();
+    private final Map<String, Redirect> redirects = new ConcurrentHashMap<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private volatile Duration latency = Duration.ZERO;
+    private volatile boolean isGzip;
+    private final AtomicInteger breakAfter = new AtomicInteger(-1);
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+
+    public StandInOrigin put(String pathAndQuery, String contentType, byte[] body) {
+        redirects.remove(pathAndQuery);
+        contents.put(pathAndQuery, new Content(contentType, body));
+        return this;
+    }
+
+    /**
+     * @param statusCode such as 301 or 302
+     * @param location an absolute path, like "/moved.json", or an absolute URL
+     */
+    public StandInOrigin putRedirect(String pathAndQuery, int statusCode, String location) {
+        contents.remove(pathAndQuery);
+        redirects.put(pathAndQuery, new Redirect(statusCode, location));
+        return this;
+    }
+
+    public StandInOrigin remove(String pathAndQuery) {
+        contents.remove(pathAndQuery);
+        redirects.remove(pathAndQuery);
+        return this;
+    }
+
+    /** Simulated server think time, added before each response. */
+    public StandInOrigin setLatency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /** Compress response bodies when the request accepts gzip. */
+    public StandInOrigin setGzip(boolean isGzip) {
+        this.isGzip = isGzip;
+        return this;
+    }
+
+    /**
+     * The body of the next response with content fails with an IOException
+     * after the given number of bytes, simulating a dropped connection.
+     */
+    public StandInOrigin breakNextResponseAfter(int bytes) {
+        breakAfter.set(bytes);
+        return this;
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    @Override
+    public TransportResponse send(TransportRequest request) throws IOException {
+        URI uri = request.getUri();
+        URI permanentRedirectUri = null;
+        boolean isPermanentSoFar = true;
+        Response response = respond(pathAndQuery(uri), request.getHeaders());
+        for (int redirectCount = 0; redirectCount < MAX_REDIRECTS && response.location != null; redirectCount++) {
+            uri = uri.resolve(response.location);
+            isPermanentSoFar = isPermanentSoFar && TransportResponse.isPermanentRedirect(response.statusCode);
+            if (isPermanentSoFar) {
+                permanentRedirectUri = uri;
+            }
+            response = respond(pathAndQuery(uri), request.getHeaders());
+        }
+
+        String statusLine = "HTTP/1.1 " + response.statusCode;
+        InputStream body = new ByteArrayInputStream(response.body);
+        if (response.breakAfter >= 0) {
+            InputStream failure = new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    throw new IOException("Simulated connection failure");
+                }
+            };
+            body = new SequenceInputStream(new ByteArrayInputStream(response.body, 0, response.breakAfter), failure);
+        }
+        return new TransportResponse(uri, statusLine, response.statusCode, response.headers, body, permanentRedirectUri);
+    }
+
+    /**
+     * Serve content over loopback.
+     *
+     * @return the base URI for requests, like {@code http://127.0.0.1:54321}
+     */
+    public synchronized URI start() throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Already started");
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+            serverExecutor.shutdown();
+            serverExecutor = null;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Map<String, String> requestHeaders = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> header : exchange.getRequestHeaders().entrySet()) {
+            requestHeaders.put(header.getKey(), header.getValue().get(0));
+        }
+
+        Response response = respond(pathAndQuery(exchange.getRequestURI()), requestHeaders);
+
+        exchange.getResponseHeaders().putAll(response.headers);
+        // Set by sendResponseHeaders().
+        exchange.getResponseHeaders().remove("Content-Length");
+        // -1 for no body, as required by 304 responses.
+        long length = response.body.length == 0 ? -1 : response.body.length;
+        exchange.sendResponseHeaders(response.statusCode, length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (response.breakAfter >= 0) {
+                out.write(response.body, 0, response.breakAfter);
+                // The server drops the connection.
+                throw new IOException("Simulated connection failure");
+            }
+            out.write(response.body);
+        }
+    }
+
+    private Response respond(String pathAndQuery, Map<String, String> requestHeaders) throws IOException {
+        requestCount.incrementAndGet();
+        simulateLatency();
+
+        Redirect redirect = redirects.get(pathAndQuery);
+        if (redirect != null) {
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            headers.put("Location", List.of(redirect.location));
+            return new Response(redirect.statusCode, headers, new byte[0], -1, redirect.location);
+        }
+
+        Content content = contents.get(pathAndQuery);
+        if (content == null) {
+            return new Response(404, new LinkedHashMap<>(), new byte[0]);
+        }
+
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        headers.put("Content-Type", List.of(content.contentType));
+        headers.put("ETag", List.of(content.etag));
+        headers.put("Last-Modified", List.of(content.lastModified));
+
+        if (isNotModified(content, requestHeaders)) {
+            return new Response(304, headers, new byte[0]);
+        }
+
+        byte[] body = content.body;
+        String acceptEncoding = header(requestHeaders, "Accept-Encoding");
+        if (isGzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            headers.put("Content-Encoding", List.of("gzip"));
+            headers.put("Vary", List.of("Accept-Encoding"));
+            body = gzip(body);
+        }
+
+        headers.put("Accept-Ranges", List.of("bytes"));
+
+        int statusCode = 200;
+        String range = header(requestHeaders, "Range");
+        if (range != null && range.startsWith("bytes=") && isIfRangeMatch(content, requestHeaders)) {
+            // A single range, "bytes=1000-" or "bytes=1000-1999".
+            int dashIndex = range.indexOf('-');
+            int start = Integer.parseInt(range.substring("bytes=".length(), dashIndex));
+            int end = dashIndex == range.length() - 1 ? body.length - 1 : Math.min(Integer.parseInt(range.substring(dashIndex + 1)), body.length - 1);
+            if (start >= body.length || start > end) {
+                headers.put("Content-Range", List.of("bytes */" + body.length));
+                return new Response(416, headers, new byte[0]);
+            }
+            headers.put("Content-Range", List.of("bytes " + start + "-" + end + "/" + body.length));
+            body = Arrays.copyOfRange(body, start, end + 1);
+            statusCode = 206;
+        }
+        headers.put("Content-Length", List.of(Integer.toString(body.length)));
+
+        int breakAfterBytes = breakAfter.getAndSet(-1);
+        return new Response(statusCode, headers, body, Math.min(breakAfterBytes, body.length));
+    }
+
+    private boolean isIfRangeMatch(Content content, Map<String, String> requestHeaders) {
+        String ifRange = header(requestHeaders, "If-Range");
+        return ifRange == null || ifRange.equals(content.etag) || ifRange.equals(content.lastModified);
+    }
+
+    private byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(body);
+        }
+        return bytes.toByteArray();
+    }
+
+    private boolean isNotModified(Content content, Map<String, String> requestHeaders) {
+        String ifNoneMatch = header(requestHeaders, "If-None-Match");
+        if (ifNoneMatch != null) {
+            // Weak comparison.
+            return content.etag.equals(ifNoneMatch.replace("W/", ""));
+        }
+
+        String ifModifiedSince = header(requestHeaders, "If-Modified-Since");
+        return content.lastModified.equals(ifModifiedSince);
+    }
+
+    private String header(Map<String, String> headers, String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private void simulateLatency() throws IOException {
+        Duration latency = this.latency;
+        if (latency.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(latency.toMillis());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private String pathAndQuery(URI uri) {
+        String path = uri.getRawPath();
+        if (path == null || path.isEmpty()) {
+            path = "/";
+        }
+        return uri.getRawQuery() == null ? path : path + "?" + uri.getRawQuery();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("contents", contents.keySet())
+                .add("requestCount", requestCount)
+                .toString();
+    }
+
+    private static final class Content {
+        private final String contentType;
+        private final byte[] body;
+        private final String etag;
+        private final String lastModified;
+
+        private Content(String contentType, byte[] body) {
+            this.contentType = contentType;
+            this.body = body;
+            this.etag = "\"" + Integer.toHexString(Arrays.hashCode(body)) + "-" + body.length + "\"";
+            this.lastModified = HTTP_DATE_FORMATTER.format(ZonedDateTime.now(ZoneOffset.UTC));
+        }
+    }
+
+    private static final class Response {
+        private final int statusCode;
+        private final Map<String, List<String>> headers;
+        private final byte[] body;
+        // Negative if the body is not broken.
+        private final int breakAfter;
+        // Null unless redirecting.
+        private final String location;
+
+        private Response(int statusCode, Map<String, List<String>> headers, byte[] body) {
+            this(statusCode, headers, body, -1);
+        }
+
+        private Response(int statusCode, Map<String, List<String>> headers, byte[] body, int breakAfter) {
+            this(statusCode, headers, body, breakAfter, null);
+        }
+
+        private Response(int statusCode, Map<String, List<String>> headers, byte[] body, int breakAfter, String location) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.body = body;
+            this.breakAfter = breakAfter;
+            this.location = location;
+        }
+    }
+
+    private static final class Redirect {
+        private final int statusCode;
+        private final String location;
+
+        private Redirect(int statusCode, String location) {
+            this.statusCode = statusCode;
+            this.location = location;
+        }
+    }
+
+}
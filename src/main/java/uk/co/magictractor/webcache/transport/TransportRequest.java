@@ -0,0 +1,78 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache.transport;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * A GET request, with headers for conditional requests etc.
+ */
+public final class TransportRequest {
+
+    public static TransportRequest get(URI uri) {
+        return new TransportRequest(uri);
+    }
+
+    private final URI uri;
+    // LinkedHashMap to preserve insertion order
+    private final Map<String, String> headers = new LinkedHashMap<>();
+
+    private TransportRequest(URI uri) {
+        if (uri == null) {
+            throw new IllegalArgumentException("uri must not be null");
+        }
+        this.uri = uri;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public TransportRequest header(String name, String value) {
+        if (name == null) {
+            throw new IllegalArgumentException();
+        }
+        if (value == null) {
+            headers.remove(name);
+        }
+        else {
+            headers.put(name, value);
+        }
+        return this;
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("uri", uri)
+                .add("headers", headers)
+                .toString();
+    }
+
+}
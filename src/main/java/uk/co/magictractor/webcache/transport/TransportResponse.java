@@ -0,0 +1,148 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Status, headers and body of a response from an {@link HttpTransport}.
+ */
+public final class TransportResponse implements AutoCloseable {
+
+    private final URI uri;
+    private final String statusLine;
+    private final int statusCode;
+    private final Map<String, List<String>> headers;
+    private final InputStream body;
+    private final URI permanentRedirectUri;
+
+    /**
+     * @param uri the URI which produced the response, which may differ from
+     *        the request URI if redirects were followed
+     * @param statusLine first line of the response, like
+     *        {@code "HTTP/1.1 200 OK"}, used when recording headers
+     * @param headers header names and values, in the order received where
+     *        known
+     * @param body the body, never null; use an empty stream for responses
+     *        without a body
+     */
+    public TransportResponse(URI uri, String statusLine, int statusCode, Map<String, List<String>> headers, InputStream body) {
+        this(uri, statusLine, statusCode, headers, body, null);
+    }
+
+    /**
+     * @param permanentRedirectUri see {@link #getPermanentRedirectUri()}
+     */
+    public TransportResponse(URI uri, String statusLine, int statusCode, Map<String, List<String>> headers, InputStream body,
+            URI permanentRedirectUri) {
+        if (body == null) {
+            throw new IllegalArgumentException("body must not be null");
+        }
+        this.uri = uri;
+        this.statusLine = statusLine;
+        this.statusCode = statusCode;
+        this.headers = Collections.unmodifiableMap(headers);
+        this.body = body;
+        this.permanentRedirectUri = permanentRedirectUri;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public String getStatusLine() {
+        return statusLine;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * All values for a header which may be repeated, in order. Header names
+     * are case insensitive. Returns an empty list if there's no such header.
+     */
+    public List<String> getHeaderValues(String name) {
+        List<String> values = new ArrayList<>();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                values.addAll(header.getValue());
+            }
+        }
+        return values;
+    }
+
+    /** Header names are case insensitive. Returns null if there's no such header. */
+    public String getFirstHeader(String name) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * If the request was permanently redirected (301 or 308), the URI reached
+     * by following only the permanent redirects at the start of the chain of
+     * redirects. Otherwise null. Temporary redirects after a permanent
+     * redirect are not included, so they are followed again by later
+     * requests.
+     */
+    public URI getPermanentRedirectUri() {
+        return permanentRedirectUri;
+    }
+
+    public InputStream getBody() {
+        return body;
+    }
+
+    static boolean isPermanentRedirect(int statusCode) {
+        return statusCode == 301 || statusCode == 308;
+    }
+
+    // For transports which wrap the body of another transport's response.
+    TransportResponse withBody(InputStream newBody) {
+        return new TransportResponse(uri, statusLine, statusCode, headers, newBody, permanentRedirectUri);
+    }
+
+    @Override
+    public void close() throws IOException {
+        body.close();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("uri", uri)
+                .add("statusLine", statusLine)
+                .add("permanentRedirectUri", permanentRedirectUri)
+                .toString();
+    }
+
+}
@@ -85,6 +85,53 @@ public class CachePropertiesTest {
         assertThat(reader.readLine()).isEqualTo(null);
     }
 
+    @Test
+    public void testWriteAndRead_freshness() throws IOException {
+        CacheProperties props = CacheProperties.newWithDefaults();
+        props.setDate(ZonedDateTime.of(2025, 7, 26, 10, 4, 40, 0, ZoneId.of("Z")));
+        props.setFreshUntil(ZonedDateTime.of(2025, 7, 26, 11, 4, 40, 0, ZoneId.of("Z")));
+        props.setMustRevalidate(true);
+
+        assertThat(writeAndRead(props).getFreshUntil()).isEqualTo(props.getFreshUntil());
+    }
+
+    @Test
+    public void testWriteAndRead_failures() throws IOException {
+        CacheProperties props = CacheProperties.newWithDefaults();
+        props.setFailureCount(3);
+        props.setBackOffUntil(ZonedDateTime.of(2025, 7, 26, 11, 4, 40, 0, ZoneId.of("Z")));
+
+        assertThat(writeAndRead(props).getBackOffUntil()).isEqualTo(props.getBackOffUntil());
+    }
+
+    @Test
+    public void testWriteAndRead_revalidations() throws IOException {
+        CacheProperties props = CacheProperties.newWithDefaults();
+        props.recordRevalidation(false);
+        props.recordRevalidation(true);
+        props.recordRevalidation(false);
+        props.recordRevalidation(false);
+
+        assertThat(writeAndRead(props).getNotModifiedStreak()).isEqualTo(2);
+    }
+
+    /** Also checks that all properties survive the round trip, by writing them again. */
+    private CacheProperties writeAndRead(CacheProperties props) throws IOException {
+        String written = write(props);
+        CacheProperties actual = new CacheProperties();
+        actual.read(new StringReader(written));
+        assertThat(write(actual)).isEqualTo(written);
+
+        return actual;
+    }
+
+    private String write(CacheProperties props) throws IOException {
+        StringWriter writer = new StringWriter();
+        props.write(writer);
+
+        return writer.toString();
+    }
+
     private CacheProperties read(String resourceName) throws IOException, ClassNotFoundException {
         try (InputStream is = getClass().getResourceAsStream(resourceName)) {
             if (is == null) {
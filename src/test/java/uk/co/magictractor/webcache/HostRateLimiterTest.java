@@ -0,0 +1,79 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import uk.co.magictractor.webcache.transport.HttpTransport;
+import uk.co.magictractor.webcache.transport.RetryingTransport;
+import uk.co.magictractor.webcache.transport.StandInOrigin;
+import uk.co.magictractor.webcache.transport.TransportRequest;
+import uk.co.magictractor.webcache.transport.TransportResponse;
+
+/**
+ *
+ */
+public class HostRateLimiterTest {
+
+    @Test
+    public void testAcquire() throws InterruptedIOException {
+        HostRateLimiter rateLimiter = new HostRateLimiter().setRate("slow.invalid", 20, 2);
+
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            rateLimiter.acquire("slow.invalid");
+        }
+        // The burst is immediate, then 50ms for each request.
+        assertThat(Duration.ofNanos(System.nanoTime() - startNanos)).isGreaterThanOrEqualTo(Duration.ofMillis(95));
+
+        startNanos = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.acquire("other.invalid");
+        }
+        assertThat(Duration.ofNanos(System.nanoTime() - startNanos)).isLessThan(Duration.ofMillis(50));
+    }
+
+    @Test
+    public void testLimit_eachRetry() throws IOException {
+        HostRateLimiter rateLimiter = new HostRateLimiter().setRate("standin.invalid", 20, 1);
+        StandInOrigin origin = new StandInOrigin().put("/a.json", "application/json", "{}".getBytes(StandardCharsets.UTF_8));
+        AtomicInteger attempts = new AtomicInteger();
+        HttpTransport failingTwice = request -> {
+            if (attempts.incrementAndGet() <= 2) {
+                throw new IOException("Connection reset");
+            }
+            return origin.send(request);
+        };
+        HttpTransport transport = new RetryingTransport(rateLimiter.limit(failingTwice), 3, Duration.ZERO, Duration.ZERO);
+
+        long startNanos = System.nanoTime();
+        try (TransportResponse response = transport.send(TransportRequest.get(URI.create("https://standin.invalid/a.json")))) {
+            assertThat(response.getStatusCode()).isEqualTo(200);
+        }
+        // The first attempt is immediate, then 50ms for each retry.
+        assertThat(Duration.ofNanos(System.nanoTime() - startNanos)).isGreaterThanOrEqualTo(Duration.ofMillis(95));
+    }
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import uk.co.magictractor.webcache.transport.TransportResponse;
+
+public class HttpFreshnessTest {
+
+    private static final ZonedDateTime RESPONSE_TIME = ZonedDateTime.of(2025, 7, 26, 10, 0, 0, 0, ZoneOffset.UTC);
+    private static final String DATE = "Sat, 26 Jul 2025 10:00:00 GMT";
+
+    @Test
+    public void testMaxAge() {
+        HttpFreshness freshness = HttpFreshness.parse("public, max-age=3600", null, null, DATE, RESPONSE_TIME);
+
+        assertThat(freshness.getFreshUntil()).isEqualTo(RESPONSE_TIME.plusHours(1));
+        assertThat(freshness.isMustRevalidate()).isFalse();
+    }
+
+    @Test
+    public void testSharedMaxAgeTakesPrecedence() {
+        HttpFreshness freshness = HttpFreshness.parse("max-age=60, s-maxage=600", null, null, DATE, RESPONSE_TIME);
+
+        assertThat(freshness.getFreshUntil()).isEqualTo(RESPONSE_TIME.plusMinutes(10));
+    }
+
+    @Test
+    public void testMaxAgeTakesPrecedenceOverExpires() {
+        HttpFreshness freshness = HttpFreshness.parse("max-age=60", "Sun, 27 Jul 2025 10:00:00 GMT", null, DATE, RESPONSE_TIME);
+
+        assertThat(freshness.getFreshUntil()).isEqualTo(RESPONSE_TIME.plusMinutes(1));
+    }
+
+    @Test
+    public void testAge() {
+        HttpFreshness freshness = HttpFreshness.parse("max-age=3600", null, "600", DATE, RESPONSE_TIME);
+
+        assertThat(freshness.getFreshUntil()).isEqualTo(RESPONSE_TIME.plusMinutes(50));
+    }
+
+    @Test
+    public void testExpires() {
+        HttpFreshness freshness = HttpFreshness.parse(null, "Sun, 27 Jul 2025 10:00:00 GMT", null, DATE, RESPONSE_TIME);
+
+        assertThat(freshness.getFreshUntil()).isEqualTo(RESPONSE_TIME.plusDays(1));
+    }
+
+    @Test
+    public void testExpires_invalid() {
+        HttpFreshness freshness = HttpFreshness.parse(null, "0", null, DATE, RESPONSE_TIME);
+
+        assertThat(freshness.getFreshUntil()).isEqualTo(RESPONSE_TIME);
+    }
+
+    @Test
+    public void testNoCache() {
+        HttpFreshness freshness = HttpFreshness.parse("no-cache, must-revalidate", null, null, DATE, RESPONSE_TIME);
+
+        assertThat(freshness.getFreshUntil()).isEqualTo(RESPONSE_TIME);
+        assertThat(freshness.isMustRevalidate()).isTrue();
+    }
+
+    @Test
+    public void testRepeatedCacheControl() {
+        Map<String, List<String>> headers = Map.of(
+            "cache-control", List.of("public, max-age=3600", "must-revalidate"),
+            "date", List.of(DATE));
+        TransportResponse response = new TransportResponse(URI.create("https://standin.invalid/"), "HTTP/1.1 200", 200, headers,
+            InputStream.nullInputStream());
+        HttpFreshness freshness = HttpFreshness.of(response, RESPONSE_TIME);
+
+        assertThat(freshness.getFreshUntil()).isEqualTo(RESPONSE_TIME.plusHours(1));
+        assertThat(freshness.isMustRevalidate()).isTrue();
+        assertThat(freshness.getDate()).isEqualTo(RESPONSE_TIME);
+    }
+
+    @Test
+    public void testNoFreshnessInformation() {
+        HttpFreshness freshness = HttpFreshness.parse("public", null, null, DATE, RESPONSE_TIME);
+
+        assertThat(freshness.getFreshUntil()).isNull();
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import uk.co.magictractor.webcache.listeners.ExpiryListeners;
+import uk.co.magictractor.webcache.transport.StandInOrigin;
+
+/**
+ *
+ */
+public class RefreshSchedulerTest {
+
+    @Test
+    public void testAdd() throws InterruptedException {
+        String path = "/" + UUID.randomUUID() + ".json";
+        StandInOrigin origin = new StandInOrigin().put(path, "application/json", "{}".getBytes(StandardCharsets.UTF_8));
+        WebCache webCache = WebCache.of("https://standin.invalid" + path).withTransport(origin);
+        webCache.addListener(ExpiryListeners.waitHours(1));
+
+        try (RefreshScheduler scheduler = new RefreshScheduler(Duration.ofMinutes(10), 1)) {
+            scheduler.add(webCache);
+
+            // The initial fetch happens in the background.
+            long deadline = System.currentTimeMillis() + 5000;
+            Instant nextRefresh = scheduler.getNextRefresh(webCache);
+            while (!nextRefresh.isAfter(Instant.now()) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+                nextRefresh = scheduler.getNextRefresh(webCache);
+            }
+
+            assertThat(origin.getRequestCount()).isEqualTo(1);
+            // Between 10 and 5 minutes before the expiry, which is rounded up to a whole minute after the fetch.
+            assertThat(nextRefresh).isBetween(Instant.now().plus(Duration.ofMinutes(49)), Instant.now().plus(Duration.ofMinutes(56)));
+
+            scheduler.remove(webCache);
+            assertThat(scheduler.getNextRefresh(webCache)).isNull();
+        }
+    }
+
+    @Test
+    public void testRefresh() {
+        String path = "/" + UUID.randomUUID() + ".json";
+        StandInOrigin origin = new StandInOrigin().put(path, "application/json", "{}".getBytes(StandardCharsets.UTF_8));
+        WebCache webCache = WebCache.of("https://standin.invalid" + path).withTransport(origin);
+        webCache.addListener(ExpiryListeners.waitHours(1));
+
+        assertThat(webCache.prefetch()).isEqualTo(FetchOutcome.MODIFIED);
+        assertThat(webCache.prefetch()).isEqualTo(FetchOutcome.CACHED);
+        assertThat(webCache.refresh()).isEqualTo(FetchOutcome.NOT_MODIFIED);
+        assertThat(origin.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testNextRefresh_beforeExpiry() {
+        Instant now = Instant.now();
+        Instant expiry = now.plus(Duration.ofHours(1));
+        Instant actual = RefreshScheduler.nextRefresh(expiry, null, Duration.ofMinutes(10), now);
+
+        assertThat(actual).isBetween(expiry.minus(Duration.ofMinutes(10)), expiry.minus(Duration.ofMinutes(5)));
+    }
+
+    @Test
+    public void testNextRefresh_expiryUnchanged() {
+        // Refreshing early did not move the expiry on, as for daily(), so wait for the expiry.
+        Instant now = Instant.now();
+        Instant expiry = now.plus(Duration.ofMinutes(3));
+        Instant actual = RefreshScheduler.nextRefresh(expiry, expiry, Duration.ofMinutes(10), now);
+
+        assertThat(actual).isBetween(expiry, expiry.plus(Duration.ofMinutes(5)));
+    }
+
+}
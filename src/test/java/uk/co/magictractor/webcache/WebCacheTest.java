@@ -16,9 +16,26 @@
 package uk.co.magictractor.webcache;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Test;
 
+import uk.co.magictractor.webcache.listeners.ExpiryListeners;
+import uk.co.magictractor.webcache.transport.StandInOrigin;
+
 /**
  *
  */
@@ -40,4 +57,352 @@ public class WebCacheTest {
         assertThat(webCache.getCacheDir()).isEqualTo("www.taransworld.com/Spoilers/?d=troops");
     }
 
+    @Test
+    public void testCopyName_normalised() {
+        WebCache webCache = WebCache.of("HTTPS://WWW.Example.com:443#fragment");
+
+        assertThat(webCache.getCacheDir()).isEqualTo("www.example.com/");
+        assertThat(webCache.name()).isEqualTo("https://www.example.com/");
+    }
+
+    @Test
+    public void testPropertiesAreShared() {
+        WebCache webCache1 = WebCache.of("https://www.example.com/shared");
+        WebCache webCache2 = WebCache.of("https://WWW.EXAMPLE.COM/shared");
+
+        assertThat(webCache1.getProperties() == webCache2.getProperties()).isTrue();
+        assertThat(webCache1.getCacheDataResource("body.txt") == webCache2.getCacheDataResource("body.txt")).isTrue();
+    }
+
+    @Test
+    public void testFetch_standInOrigin() throws IOException {
+        String path = uniquePath(".json");
+        StandInOrigin origin = jsonOrigin(path, "{}");
+
+        assertThat(read(webCache(origin, path))).isEqualTo("{}");
+        assertThat(origin.getRequestCount()).isEqualTo(1);
+
+        // Forced expiry, the stand-in should confirm that content is unchanged.
+        WebCache webCache = expiredWebCache(origin, path);
+        assertThat(read(webCache)).isEqualTo("{}");
+        assertThat(origin.getRequestCount()).isEqualTo(2);
+        assertThat(webCache.getProperties().getEtag()).isNotNull();
+        assertThat(webCache.getProperties().getNotModifiedCount()).isEqualTo(1);
+        assertThat(webCache.getProperties().getNotModifiedStreak()).isEqualTo(1);
+    }
+
+    @Test
+    public void testHostRateLimit_suppliedTransport() throws IOException {
+        String host = UUID.randomUUID() + ".invalid";
+        WebCache.getHostRateLimiter().setRate(host, 20, 1);
+        StandInOrigin origin = new StandInOrigin();
+
+        long startNanos = System.nanoTime();
+        for (String path : Arrays.asList("/a.json", "/b.json", "/c.json")) {
+            origin.put(path, "application/json", utf8("{}"));
+            read(WebCache.of("https://" + host + path).withTransport(origin));
+        }
+        // The first request is immediate, then 50ms for each request.
+        assertThat(Duration.ofNanos(System.nanoTime() - startNanos)).isGreaterThanOrEqualTo(Duration.ofMillis(95));
+    }
+
+    @Test
+    public void testOpenInputStreamAsync() throws Exception {
+        String path = uniquePath(".json");
+        WebCache webCache = webCache(jsonOrigin(path, "[]"), path);
+
+        try (InputStream in = webCache.openInputStreamAsync().get()) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("[]");
+        }
+    }
+
+    @Test
+    public void testPrefetchAll() {
+        String dir = uniquePath("/");
+        StandInOrigin origin = new StandInOrigin();
+        List<WebCache> resources = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            origin.put(dir + i + ".json", "application/json", utf8("[" + i + "]"));
+            resources.add(webCache(origin, dir + i + ".json"));
+        }
+        resources.add(webCache(origin, dir + "missing.json"));
+
+        PrefetchSummary summary = WebCache.prefetchAll(resources, 2, 2);
+        assertThat(summary.getModifiedCount()).isEqualTo(5);
+        assertThat(summary.getFailureCount()).isEqualTo(1);
+        assertThat(summary.getFailures().get(0).getResource()).isSameAs(resources.get(5));
+
+        summary = WebCache.prefetchAll(resources.subList(0, 5));
+        assertThat(summary.getCachedCount()).isEqualTo(5);
+        assertThat(origin.getRequestCount()).isEqualTo(6);
+    }
+
+    @Test
+    public void testConcurrentFetchesAreCoalesced() throws Exception {
+        String path = uniquePath(".json");
+        StandInOrigin origin = jsonOrigin(path, "{}").setLatency(Duration.ofMillis(200));
+
+        List<CompletableFuture<InputStream>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(webCache(origin, path).openInputStreamAsync());
+        }
+        assertThat(readAll(futures)).containsOnly("{}");
+        assertThat(origin.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testConcurrentReadsOfSharedInstance() throws Exception {
+        String path = uniquePath(".json");
+        StandInOrigin origin = jsonOrigin(path, "{}").setLatency(Duration.ofMillis(100));
+        WebCache webCache = webCache(origin, path);
+
+        List<CompletableFuture<InputStream>> futures = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            futures.add(webCache.openInputStreamAsync());
+        }
+        assertThat(readAll(futures)).containsOnly("{}");
+        assertThat(origin.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testStreaming() throws IOException {
+        String path = uniquePath(".txt");
+        byte[] body = utf8("x".repeat(100_000));
+        StandInOrigin origin = new StandInOrigin().put(path, "text/plain", body);
+        WebCache webCache = webCache(origin, path).withStreaming(true);
+
+        try (InputStream in = webCache.openInputStream()) {
+            // Close after reading part of the body, the remainder should still be saved.
+            assertThat(in.read()).isEqualTo((int) 'x');
+        }
+
+        assertThat(webCache.getBodyCacheDataResource().size()).isEqualTo(body.length);
+        assertThat(read(webCache).length()).isEqualTo(body.length);
+        assertThat(origin.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        String path = uniquePath(".json");
+        StandInOrigin origin = jsonOrigin(path, "[1]");
+        WebCache webCache = expiredWebCache(origin, path).withStaleWhileRevalidate(Duration.ofDays(1));
+        origin.put(path, "application/json", utf8("[2]"));
+
+        // The stale local copy is served, and the new content arrives in the background.
+        assertThat(read(webCache)).isEqualTo("[1]");
+        long deadline = System.currentTimeMillis() + 5000;
+        String content = read(webCache);
+        while (!"[2]".equals(content) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            content = read(webCache);
+        }
+        assertThat(content).isEqualTo("[2]");
+    }
+
+    @Test
+    public void testDeadline() throws IOException {
+        String path = uniquePath(".json");
+        StandInOrigin origin = jsonOrigin(path, "[1]");
+        WebCache webCache = expiredWebCache(origin, path);
+        origin.put(path, "application/json", utf8("[2]")).setLatency(Duration.ofMillis(500));
+
+        try (ResourceInputStream in = webCache.openInputStream(Duration.ofMillis(50))) {
+            assertThat(in.isStale()).isTrue();
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("[1]");
+        }
+        // Joins the fetch which is still in progress.
+        try (ResourceInputStream in = webCache.openInputStream(Duration.ofSeconds(5))) {
+            assertThat(in.isStale()).isFalse();
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("[2]");
+        }
+        assertThat(origin.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testStaleIfError() throws IOException {
+        String path = uniquePath(".json");
+        StandInOrigin origin = jsonOrigin(path, "[1]");
+        WebCache webCache = expiredWebCache(origin, path).withStaleIfError(Duration.ofDays(1));
+        // The stand-in returns 404 once removed.
+        origin.remove(path);
+
+        assertThat(read(webCache)).isEqualTo("[1]");
+        assertThat(webCache.getProperties().getFailureCount()).isEqualTo(1);
+        assertThat(webCache.getProperties().getBackOffUntil()).isNotNull();
+
+        // Backing off, so the origin is not asked again.
+        assertThat(webCache.prefetch()).isEqualTo(FetchOutcome.STALE);
+        assertThat(read(webCache)).isEqualTo("[1]");
+        assertThat(origin.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testStaleIfError_streamingWithoutLocalCopy() throws Exception {
+        WebCache webCache = WebCache.of("https://standin.invalid" + uniquePath(".json"))
+                .withTransport(request -> {
+                    throw new IOException("Origin unavailable");
+                })
+                .withStreaming(true)
+                .withStaleIfError(Duration.ofDays(1));
+
+        assertThatThrownBy(() -> read(webCache)).isInstanceOf(UncheckedIOException.class);
+        // Backing off, with no local copy to use instead.
+        assertThatThrownBy(() -> read(webCache)).isInstanceOf(IllegalStateException.class);
+        // The lock must have been released, rather than blocking later reads.
+        CompletableFuture<InputStream> third = webCache.openInputStreamAsync();
+        assertThatThrownBy(() -> third.get(10, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+    }
+
+    @Test
+    public void testNotFound() throws Exception {
+        String path = uniquePath(".json");
+        StandInOrigin origin = new StandInOrigin();
+        WebCache webCache = webCache(origin, path).withNotFoundTtl(Duration.ofMillis(500));
+
+        assertThatThrownBy(() -> read(webCache)).isInstanceOf(ResourceNotFoundException.class);
+        // Cached, so the origin is not asked again.
+        assertThatThrownBy(() -> read(webCache)).isInstanceOf(ResourceNotFoundException.class);
+        assertThat(webCache.prefetch()).isEqualTo(FetchOutcome.CACHED);
+        assertThat(origin.getRequestCount()).isEqualTo(1);
+
+        // Once the TTL has passed the origin is asked again.
+        origin.put(path, "application/json", utf8("[1]"));
+        Thread.sleep(600);
+        assertThat(read(webCache)).isEqualTo("[1]");
+        assertThat(webCache.getProperties().getNotFoundStatus()).isEqualTo(0);
+        assertThat(origin.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        String path = uniquePath(".json");
+        String body = "[" + "1,".repeat(10_000) + "1]";
+        WebCache webCache = webCache(jsonOrigin(path, body).setGzip(true), path).withKeepUncompressedCopy(true);
+
+        assertThat(read(webCache)).isEqualTo(body);
+        assertThat(webCache.getProperties().getContentEncoding()).isEqualTo("gzip");
+        assertThat(webCache.getProperties().getBodyName()).isEqualTo("body.json.gz");
+        assertThat(webCache.getBodyCacheDataResource().size()).isLessThan(body.length());
+        assertThat(webCache.getUncompressedBodyCacheDataResource().size()).isEqualTo(body.length());
+    }
+
+    @Test
+    public void testGzip_streaming() throws IOException {
+        String path = uniquePath(".txt");
+        String body = "x".repeat(100_000);
+        StandInOrigin origin = new StandInOrigin().put(path, "text/plain", utf8(body)).setGzip(true);
+        WebCache webCache = webCache(origin, path).withStreaming(true);
+
+        assertThat(read(webCache)).isEqualTo(body);
+        assertThat(read(webCache)).isEqualTo(body);
+        assertThat(webCache.getProperties().getBodyName()).isEqualTo("body.txt.gz");
+        assertThat(origin.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testResumable() throws IOException {
+        String path = uniquePath(".txt");
+        String body = lines(20_000);
+        StandInOrigin origin = new StandInOrigin()
+                .put(path, "text/plain", utf8(body))
+                .breakNextResponseAfter(30_000);
+        WebCache webCache = webCache(origin, path).withResumable(true);
+
+        assertThatThrownBy(() -> read(webCache)).isInstanceOf(UncheckedIOException.class);
+        assertThat(webCache.getCacheDataResource("body.txt").partialSize()).isEqualTo(30_000L);
+
+        assertThat(read(webCache)).isEqualTo(body);
+        assertThat(new String(webCache.getCacheDataResource("headers.txt").openInputStream().readAllBytes(), StandardCharsets.UTF_8))
+                .contains("HTTP/1.1 206");
+        assertThat(webCache.getBodyCacheDataResource().partialSize()).isEqualTo(0L);
+        assertThat(origin.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testParallelRanges() throws IOException {
+        String path = uniquePath(".txt");
+        String body = lines(500_000);
+        StandInOrigin origin = new StandInOrigin().put(path, "text/plain", utf8(body));
+        // 3.8MB, so three ranges of at least 1MiB.
+        WebCache webCache = webCache(origin, path).withParallelRanges(4);
+
+        assertThat(read(webCache)).isEqualTo(body);
+        assertThat(origin.getRequestCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testRedirects() throws IOException {
+        String path = uniquePath("");
+        StandInOrigin origin = jsonOrigin(path + "/new.json", "[1]")
+                .putRedirect(path + "/permanent.json", 301, path + "/new.json")
+                .putRedirect(path + "/temporary.json", 302, path + "/new.json");
+
+        WebCache permanent = webCache(origin, path + "/permanent.json");
+        permanent.addListener(ExpiryListeners.always());
+        assertThat(read(permanent)).isEqualTo("[1]");
+        assertThat(permanent.getProperties().getPermanentRedirect()).isEqualTo("https://standin.invalid" + path + "/new.json");
+        assertThat(origin.getRequestCount()).isEqualTo(2);
+        // Revalidated directly against the new location.
+        assertThat(read(permanent)).isEqualTo("[1]");
+        assertThat(origin.getRequestCount()).isEqualTo(3);
+
+        WebCache temporary = webCache(origin, path + "/temporary.json");
+        temporary.addListener(ExpiryListeners.always());
+        assertThat(read(temporary)).isEqualTo("[1]");
+        assertThat(read(temporary)).isEqualTo("[1]");
+        assertThat(temporary.getProperties().getPermanentRedirect()).isNull();
+        assertThat(origin.getRequestCount()).isEqualTo(7);
+    }
+
+    /** A unique path, so that local copies from previous test runs are not used. */
+    private String uniquePath(String suffix) {
+        return "/" + UUID.randomUUID() + suffix;
+    }
+
+    private StandInOrigin jsonOrigin(String path, String json) {
+        return new StandInOrigin().put(path, "application/json", utf8(json));
+    }
+
+    private WebCache webCache(StandInOrigin origin, String path) {
+        return WebCache.of("https://standin.invalid" + path).withTransport(origin);
+    }
+
+    /** Fetches once so there is a local copy, then returns an instance for which it has always expired. */
+    private WebCache expiredWebCache(StandInOrigin origin, String path) throws IOException {
+        read(webCache(origin, path));
+        WebCache webCache = webCache(origin, path);
+        webCache.addListener(ExpiryListeners.always());
+
+        return webCache;
+    }
+
+    private byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Distinct lines, so that misplaced ranges would be noticed.
+    private String lines(int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(i).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private List<String> readAll(List<CompletableFuture<InputStream>> futures) throws Exception {
+        List<String> contents = new ArrayList<>();
+        for (CompletableFuture<InputStream> future : futures) {
+            try (InputStream in = future.get()) {
+                contents.add(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return contents;
+    }
+
+    private String read(WebCache webCache) throws IOException {
+        try (InputStream in = webCache.openInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
 }
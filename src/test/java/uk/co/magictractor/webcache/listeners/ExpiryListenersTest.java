@@ -18,7 +18,10 @@ package uk.co.magictractor.webcache.listeners;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 
 import org.junit.jupiter.api.Test;
 
@@ -66,4 +69,67 @@ public class ExpiryListenersTest {
         assertThat(actual).isEqualTo(FROM.plusDays(1));
     }
 
+    @Test
+    public void testHeuristicExpiry() {
+        ZonedDateTime timestamp = FROM.atZone(ZoneOffset.UTC);
+        ZonedDateTime actual = ExpiryListeners.heuristicExpiry(timestamp, null, timestamp.minusDays(10), 0.1, Duration.ofDays(7));
+
+        assertThat(actual).isEqualTo(timestamp.plusDays(1));
+    }
+
+    @Test
+    public void testHeuristicExpiry_date() {
+        ZonedDateTime timestamp = FROM.atZone(ZoneOffset.UTC);
+        // The server's clock is 5 days behind.
+        ZonedDateTime date = timestamp.minusDays(5);
+        ZonedDateTime actual = ExpiryListeners.heuristicExpiry(timestamp, date, date.minusDays(10), 0.1, Duration.ofDays(7));
+
+        assertThat(actual).isEqualTo(timestamp.plusDays(1));
+    }
+
+    @Test
+    public void testHeuristicExpiry_maximum() {
+        ZonedDateTime timestamp = FROM.atZone(ZoneOffset.UTC);
+        ZonedDateTime actual = ExpiryListeners.heuristicExpiry(timestamp, null, timestamp.minusDays(365), 0.1, Duration.ofDays(7));
+
+        assertThat(actual).isEqualTo(timestamp.plusDays(7));
+    }
+
+    @Test
+    public void testHeuristicExpiry_modifiedInFuture() {
+        ZonedDateTime timestamp = FROM.atZone(ZoneOffset.UTC);
+        ZonedDateTime actual = ExpiryListeners.heuristicExpiry(timestamp, null, timestamp.plusHours(1), 0.1, Duration.ofDays(7));
+
+        assertThat(actual).isEqualTo(timestamp);
+    }
+
+    @Test
+    public void testAdaptiveInterval_noHistory() {
+        Duration actual = ExpiryListeners.adaptiveInterval(0, 0, 0, Duration.ofHours(1), Duration.ofDays(7));
+
+        assertThat(actual).isEqualTo(Duration.ofHours(1));
+    }
+
+    @Test
+    public void testAdaptiveInterval_streak() {
+        Duration actual = ExpiryListeners.adaptiveInterval(0, 3, 3, Duration.ofHours(1), Duration.ofDays(7));
+
+        assertThat(actual).isEqualTo(Duration.ofHours(8));
+    }
+
+    @Test
+    public void testAdaptiveInterval_stableHistory() {
+        // Usually unchanged, so restarts from a longer interval after a change.
+        Duration actual = ExpiryListeners.adaptiveInterval(2, 10, 0, Duration.ofHours(1), Duration.ofDays(7));
+
+        assertThat(actual).isEqualTo(Duration.ofHours(6));
+    }
+
+    @Test
+    public void testAdaptiveInterval_maximum() {
+        Duration actual = ExpiryListeners.adaptiveInterval(0, 100, 100, Duration.ofHours(1), Duration.ofDays(7));
+
+        assertThat(actual).isEqualTo(Duration.ofDays(7));
+    }
+
 }
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache.transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ */
+public class AdaptiveConcurrencyTransportTest {
+
+    private static final URI RESOURCE_URI = URI.create("https://standin.invalid/a.txt");
+
+    @Test
+    public void testLimit() throws Exception {
+        StandInOrigin origin = new StandInOrigin().put("/a.txt", "text/plain", "a".getBytes(StandardCharsets.UTF_8));
+        AdaptiveConcurrencyTransport transport = new AdaptiveConcurrencyTransport(origin, 1, 8);
+
+        TransportResponse first = transport.send(TransportRequest.get(RESOURCE_URI));
+        CompletableFuture<TransportResponse> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return transport.send(TransportRequest.get(RESOURCE_URI));
+            }
+            catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        // Waits until the first response has been closed.
+        Thread.sleep(100);
+        assertThat(second.isDone()).isFalse();
+        first.close();
+        second.get(5, TimeUnit.SECONDS).close();
+    }
+
+    @Test
+    public void testErrorsReduceLimit() throws IOException {
+        StandInOrigin origin = new StandInOrigin();
+        AdaptiveConcurrencyTransport transport = new AdaptiveConcurrencyTransport(request -> {
+            TransportResponse response = origin.send(request);
+            return new TransportResponse(response.getUri(), "HTTP/1.1 503", 503, response.getHeaders(), response.getBody());
+        }, 8, 16);
+
+        transport.send(TransportRequest.get(RESOURCE_URI)).close();
+        assertThat(transport.getLimit(RESOURCE_URI)).isEqualTo(4);
+        transport.send(TransportRequest.get(RESOURCE_URI)).close();
+        assertThat(transport.getLimit(RESOURCE_URI)).isEqualTo(2);
+    }
+
+}
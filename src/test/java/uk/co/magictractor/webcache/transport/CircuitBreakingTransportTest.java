@@ -0,0 +1,54 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache.transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ */
+public class CircuitBreakingTransportTest {
+
+    private static final URI RESOURCE_URI = URI.create("https://standin.invalid/a.txt");
+
+    @Test
+    public void testCircuitBreaker() {
+        AtomicInteger attempts = new AtomicInteger();
+        HttpTransport down = request -> {
+            attempts.incrementAndGet();
+            throw new IOException("Connection refused");
+        };
+        CircuitBreakingTransport circuitBreaker = new CircuitBreakingTransport(down, 2, Duration.ofMinutes(1));
+        RetryingTransport transport = new RetryingTransport(circuitBreaker, 5, Duration.ofMillis(1), Duration.ofMillis(5));
+
+        // Opens after the second failure, so the third attempt fails fast.
+        assertThatThrownBy(() -> transport.send(TransportRequest.get(RESOURCE_URI))).isInstanceOf(CircuitOpenException.class);
+        assertThat(attempts.get()).isEqualTo(2);
+        assertThat(circuitBreaker.isOpen(RESOURCE_URI)).isTrue();
+
+        assertThatThrownBy(() -> transport.send(TransportRequest.get(RESOURCE_URI))).isInstanceOf(CircuitOpenException.class);
+        assertThat(attempts.get()).isEqualTo(2);
+    }
+
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache.transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ */
+public class HedgingTransportTest {
+
+    private static final URI RESOURCE_URI = URI.create("https://standin.invalid/a.txt");
+
+    @Test
+    public void testHedge() throws IOException, InterruptedException {
+        StandInOrigin origin = new StandInOrigin().put("/a.txt", "text/plain", "a".getBytes(StandardCharsets.UTF_8));
+        AtomicInteger requestCount = new AtomicInteger();
+        CountDownLatch stuckInterrupted = new CountDownLatch(1);
+        HttpTransport sometimesStuck = request -> {
+            if (requestCount.incrementAndGet() == 21) {
+                try {
+                    Thread.sleep(10_000);
+                }
+                catch (InterruptedException e) {
+                    stuckInterrupted.countDown();
+                    throw new InterruptedIOException();
+                }
+            }
+            return origin.send(request);
+        };
+        ExecutorService executor = Executors.newCachedThreadPool();
+        HedgingTransport transport = new HedgingTransport(sometimesStuck, 0.95, Duration.ofMillis(20), executor);
+
+        try {
+            // Latencies from which to calculate the percentile.
+            for (int i = 0; i < 20; i++) {
+                transport.send(TransportRequest.get(RESOURCE_URI)).close();
+            }
+
+            long startNanos = System.nanoTime();
+            try (TransportResponse response = transport.send(TransportRequest.get(RESOURCE_URI))) {
+                assertThat(response.getStatusCode()).isEqualTo(200);
+            }
+            assertThat(Duration.ofNanos(System.nanoTime() - startNanos)).isLessThan(Duration.ofSeconds(2));
+            assertThat(requestCount.get()).isEqualTo(22);
+            assertThat(stuckInterrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testHedge_recordsOutrunLatency() throws IOException {
+        StandInOrigin origin = new StandInOrigin().put("/a.txt", "text/plain", "a".getBytes(StandardCharsets.UTF_8));
+        AtomicInteger requestCount = new AtomicInteger();
+        HttpTransport stuckAfterWarmUp = request -> {
+            // After the first 20 requests, each first attempt is stuck and its hedge is fast.
+            int count = requestCount.incrementAndGet();
+            if (count > 20 && count % 2 == 1) {
+                try {
+                    Thread.sleep(10_000);
+                }
+                catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            return origin.send(request);
+        };
+        ExecutorService executor = Executors.newCachedThreadPool();
+        HedgingTransport transport = new HedgingTransport(stuckAfterWarmUp, 0.95, Duration.ofMillis(20), executor);
+
+        try {
+            for (int i = 0; i < 40; i++) {
+                transport.send(TransportRequest.get(RESOURCE_URI)).close();
+            }
+
+            // Half of the latencies are from stuck attempts, which waited at least the hedge delay.
+            assertThat(Duration.ofNanos(transport.percentileNanos(RESOURCE_URI))).isGreaterThanOrEqualTo(Duration.ofMillis(20));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
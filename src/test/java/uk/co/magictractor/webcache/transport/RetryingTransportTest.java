@@ -0,0 +1,53 @@
+/**
+ * Copyright 2026 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.webcache.transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ */
+public class RetryingTransportTest {
+
+    private static final URI RESOURCE_URI = URI.create("https://standin.invalid/a.txt");
+
+    @Test
+    public void testRetry() throws IOException {
+        StandInOrigin origin = new StandInOrigin().put("/a.txt", "text/plain", "a".getBytes(StandardCharsets.UTF_8));
+        AtomicInteger failures = new AtomicInteger(2);
+        HttpTransport flaky = request -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new IOException("Connection refused");
+            }
+            return origin.send(request);
+        };
+        RetryingTransport transport = new RetryingTransport(flaky, 3, Duration.ofMillis(10), Duration.ofMillis(50));
+
+        try (TransportResponse response = transport.send(TransportRequest.get(RESOURCE_URI))) {
+            assertThat(response.getStatusCode()).isEqualTo(200);
+        }
+        assertThat(origin.getRequestCount()).isEqualTo(1);
+    }
+
+}